@@ -364,6 +364,8 @@ def main(root, out):
         latency_vals_by_seed = []
         for sd in seed_dirs:
             sync_path = sd / "sync.csv"
+            if not sync_path.exists():
+                sync_path = sd / "sync.csv.gz"  # -Dtrace.compression=gzip
             if not sync_path.exists():
                 continue
             try:
@@ -373,10 +375,11 @@ def main(root, out):
                 continue
             seed_sync_dfs.append(sync_df)
 
-            # collect modality files t1..t4
+            # collect modality files t1..t4, one per trace: x.csv, else x.csv.gz
+            tpaths = {p.name.split(".")[0]: p for p in sd.glob("t*.csv.gz")}
+            tpaths.update({p.name.split(".")[0]: p for p in sd.glob("t*.csv")})
             mod_files = {}
-            for tpath in sorted(sd.glob("t*.csv")):
-                mod_name = tpath.stem  # t1, t2, ...
+            for mod_name, tpath in sorted(tpaths.items()):  # t1, t2, ...
                 try:
                     tdf = read_csv_safe(tpath, TX_REQUIRED)
                 except Exception as e:
@@ -113,6 +113,8 @@ for i, exp in enumerate(exp_folders, 1):
     # Load all seeds
     for sd in seed_dirs:
         fp = os.path.join(exp_path, sd, "sync.csv")
+        if not os.path.exists(fp):
+            fp += ".gz"  # -Dtrace.compression=gzip
         if not os.path.exists(fp):
             continue
         try:
@@ -19,6 +19,7 @@ import com.ms4systems.devs.simviewer.standalone.SimViewer;
 public class ACTIVITY1 extends CoupledModelImpl {
 	private static final long serialVersionUID = 1L;
 	protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+	protected RunContext runContext;
 	final static int step = 0;
 
 	public final Port<Serializable> inM1 = 
@@ -36,7 +37,11 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		this("main",step);
 	}
 	public ACTIVITY1 (String name,double step){
+		this(name, step, RunContext.getDefault());
+	}
+	public ACTIVITY1 (String name,double step, RunContext runContext){
 		super(name);
+		this.runContext = runContext;
 		makeActivity();
 		//addTestInput("in", new entity("job"));
 	}
@@ -46,6 +51,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		t1 t1_instance = new t1("?t1");
 		addChildModel(t1_instance);
+		t1_instance.setRunContext(runContext);
 
 
 			
@@ -53,6 +59,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		t2 t2_instance = new t2("?t2");
 		addChildModel(t2_instance);
+		t2_instance.setRunContext(runContext);
 
 
 			
@@ -60,6 +67,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		t3 t3_instance = new t3("?t3");
 		addChildModel(t3_instance);
+		t3_instance.setRunContext(runContext);
 
 
 			
@@ -67,6 +75,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		j1 j1_instance = new j1("?j1");
 		addChildModel(j1_instance);
+		j1_instance.setRunContext(runContext);
 
 
 			
@@ -74,6 +83,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		j2 j2_instance = new j2("?j2");
 		addChildModel(j2_instance);
+		j2_instance.setRunContext(runContext);
 
 
 			
@@ -92,11 +102,13 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		sync sync_instance = new sync("sync", step, 
 											syncInport, syncOutport);
 		addChildModel(sync_instance);
+		sync_instance.setRunContext(runContext);
 
 
 		
 		j31 j31_instance = new j31("?j31");
 		addChildModel(j31_instance);
+		j31_instance.setRunContext(runContext);
 
 
 			
@@ -104,6 +116,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		j32 j32_instance = new j32("?j32");
 		addChildModel(j32_instance);
+		j32_instance.setRunContext(runContext);
 
 
 			
@@ -116,26 +129,31 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		BEHAVIOR1 BEHAVIOR1_instance = new BEHAVIOR1("", step, 
 											BEHAVIOR1Inport, BEHAVIOR1Outport);
 		addChildModel(BEHAVIOR1_instance);
+		BEHAVIOR1_instance.setRunContext(runContext);
 
 		BEHAVIOR2 BEHAVIOR2_instance = new BEHAVIOR2("");
 		addChildModel(BEHAVIOR2_instance);
+		BEHAVIOR2_instance.setRunContext(runContext);
 
 
 
 		
 		t4 t4_instance = new t4("?t4");
 		addChildModel(t4_instance);
+		t4_instance.setRunContext(runContext);
 
 
 			
 		BEHAVIOR3 BEHAVIOR3_instance = new BEHAVIOR3("");
 		addChildModel(BEHAVIOR3_instance);
+		BEHAVIOR3_instance.setRunContext(runContext);
 
 
 
 		
 		j4 j4_instance = new j4("?j4");
 		addChildModel(j4_instance);
+		j4_instance.setRunContext(runContext);
 
 
 			
@@ -143,17 +161,20 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		drop drop_instance = new drop("drop");
 		addChildModel(drop_instance);
+		drop_instance.setRunContext(runContext);
 
 
 			
 		BEHAVIOR4 BEHAVIOR4_instance = new BEHAVIOR4("");
 		addChildModel(BEHAVIOR4_instance);
+		BEHAVIOR4_instance.setRunContext(runContext);
 
 
 
 		
 		threshold threshold_instance = new threshold("threshold?");
 		addChildModel(threshold_instance);
+		threshold_instance.setRunContext(runContext);
 
 
 			
@@ -161,6 +182,7 @@ public class ACTIVITY1 extends CoupledModelImpl {
 		
 		diffusion diffusion_instance = new diffusion("diffusion");
 		addChildModel(diffusion_instance);
+		diffusion_instance.setRunContext(runContext);
 
 
 			
@@ -0,0 +1,268 @@
+package Models.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shared output for the analytics CSV files written by the atomic models.
+ * Each results file gets one long-lived buffered channel instead of being
+ * reopened for every row. A channel is flushed once its buffer passes
+ * {@link #getFlushChars()} characters or {@link #getFlushMillis()} of wall
+ * clock time have passed since the last flush, and when the run is closed.
+ *
+ * A channel can be opened with {@link Compression}, in which case the text
+ * is compressed as it is written out; see {@link CompressedTraceReader} for
+ * reading it back.
+ */
+public class AnalyticsSink {
+
+	public static final int DEFAULT_FLUSH_CHARS = 64 * 1024;
+	public static final long DEFAULT_FLUSH_MILLIS = 2000;
+
+	private static final AnalyticsSink shared = new AnalyticsSink();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("AnalyticsSink-shutdown") {
+			@Override
+			public void run() {
+				TracePipeline.closeShared();
+				shared.closeAll();
+			}
+		});
+	}
+
+	private final Map<String, Channel> channels = new HashMap<String, Channel>();
+	private int flushChars = DEFAULT_FLUSH_CHARS;
+	private long flushMillis = DEFAULT_FLUSH_MILLIS;
+
+	public static AnalyticsSink shared() {
+		return shared;
+	}
+
+	/**
+	 * Opens (or reopens) the channel for fileName, truncating the file and
+	 * writing the header line. Missing parent directories are created.
+	 */
+	public synchronized Channel open(String fileName, String header) throws IOException {
+		return open(fileName, header, Compression.NONE, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Opens a channel whose output is compressed at the given
+	 * {@link Deflater} level (0-9, or -1 for the default). The file name is
+	 * used as is; callers add {@link Compression#suffix()}.
+	 */
+	public synchronized Channel open(String fileName, String header, Compression compression, int level)
+			throws IOException {
+		Channel old = channels.remove(fileName);
+		if (old != null)
+			old.close();
+		File file = new File(fileName);
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		OutputStream out = compression.wrap(new FileOutputStream(file), level);
+		Channel channel = new Channel(fileName, new BufferedWriter(new OutputStreamWriter(out,
+				StandardCharsets.UTF_8), 8192), flushChars, flushMillis);
+		channels.put(fileName, channel);
+		if (header != null)
+			channel.append(header);
+		return channel;
+	}
+
+	/**
+	 * Returns the open channel for fileName, opening it in append mode if no
+	 * model has opened it yet.
+	 */
+	public synchronized Channel channel(String fileName) throws IOException {
+		Channel channel = channels.get(fileName);
+		if (channel == null) {
+			File file = new File(fileName);
+			if (file.getParentFile() != null)
+				file.getParentFile().mkdirs();
+			channel = new Channel(fileName, newWriter(file, true), flushChars, flushMillis);
+			channels.put(fileName, channel);
+		}
+		return channel;
+	}
+
+	public void append(String fileName, String str) {
+		try {
+			channel(fileName).append(str);
+		} catch (IOException e) {
+			System.out.println("exception occurred" + e);
+		}
+	}
+
+	public synchronized void flushAll() {
+		for (Channel channel : channels.values())
+			channel.flush();
+	}
+
+	/** Flushes and closes one channel and forgets it, so a finished run keeps no buffers. */
+	public synchronized void close(Channel channel) {
+		if (channels.get(channel.getFileName()) == channel)
+			channels.remove(channel.getFileName());
+		channel.close();
+	}
+
+	/** Flushes and closes every channel. Called at the end of a simulation run. */
+	public synchronized void closeAll() {
+		List<Channel> open = new ArrayList<Channel>(channels.values());
+		channels.clear();
+		for (Channel channel : open)
+			channel.close();
+	}
+
+	public synchronized void setFlushThresholds(int flushChars, long flushMillis) {
+		this.flushChars = flushChars;
+		this.flushMillis = flushMillis;
+	}
+
+	public int getFlushChars() {
+		return flushChars;
+	}
+
+	public long getFlushMillis() {
+		return flushMillis;
+	}
+
+	private static Writer newWriter(File file, boolean append) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file, append), StandardCharsets.UTF_8), 8192);
+	}
+
+	/**
+	 * How a channel's bytes are stored. Each flush of a compressed channel
+	 * ends with a sync flush, so everything flushed so far can be read even
+	 * while the run is still writing.
+	 */
+	public enum Compression {
+		NONE(""), GZIP(".gz"), DEFLATE(".deflate");
+
+		private final String suffix;
+
+		Compression(String suffix) {
+			this.suffix = suffix;
+		}
+
+		/** Appended to the file name: x.csv is written as x.csv.gz with GZIP. */
+		public String suffix() {
+			return suffix;
+		}
+
+		/** The compression a file was written with, judged by its name. */
+		public static Compression forFile(String fileName) {
+			if (fileName.endsWith(GZIP.suffix))
+				return GZIP;
+			if (fileName.endsWith(DEFLATE.suffix))
+				return DEFLATE;
+			return NONE;
+		}
+
+		OutputStream wrap(OutputStream out, final int level) throws IOException {
+			switch (this) {
+			case GZIP:
+				return new GZIPOutputStream(out, 64 * 1024, true) {
+					{
+						def.setLevel(level);
+					}
+				};
+			case DEFLATE:
+				final Deflater deflater = new Deflater(level);
+				return new DeflaterOutputStream(out, deflater, 64 * 1024, true) {
+					@Override
+					public void close() throws IOException {
+						super.close();
+						deflater.end();
+					}
+				};
+			default:
+				return out;
+			}
+		}
+
+		InputStream unwrap(InputStream in) throws IOException {
+			switch (this) {
+			case GZIP:
+				return new GZIPInputStream(in, 64 * 1024);
+			case DEFLATE:
+				return new InflaterInputStream(in);
+			default:
+				return in;
+			}
+		}
+	}
+
+	/** One results file. Rows are collected in memory and written in blocks. */
+	public static class Channel {
+		private final String fileName;
+		private final StringBuilder buffer;
+		private final int flushChars;
+		private final long flushMillis;
+		private Writer out;
+		private long lastFlush;
+
+		Channel(String fileName, Writer out, int flushChars, long flushMillis) {
+			this.fileName = fileName;
+			this.out = out;
+			this.flushChars = flushChars;
+			this.flushMillis = flushMillis;
+			this.buffer = new StringBuilder(Math.max(flushChars, 1024) + 256);
+			this.lastFlush = System.currentTimeMillis();
+		}
+
+		public String getFileName() {
+			return fileName;
+		}
+
+		public synchronized void append(CharSequence str) {
+			if (out == null)
+				return;
+			buffer.append(str);
+			if (buffer.length() >= flushChars
+					|| System.currentTimeMillis() - lastFlush >= flushMillis)
+				flush();
+		}
+
+		public synchronized void flush() {
+			if (out == null)
+				return;
+			try {
+				out.append(buffer);
+				out.flush();
+			} catch (IOException e) {
+				System.out.println("exception occurred" + e);
+			}
+			buffer.setLength(0);
+			lastFlush = System.currentTimeMillis();
+		}
+
+		public synchronized void close() {
+			if (out == null)
+				return;
+			flush();
+			try {
+				out.close();
+			} catch (IOException e) {
+				System.out.println("exception occurred" + e);
+			}
+			out = null;
+		}
+	}
+}
@@ -17,12 +17,8 @@ import java.net.URISyntaxException;
 
 import java.util.*;
 import java.util.ArrayList;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 import com.ms4systems.devs.analytics.PMFForSurvival;
 import com.ms4systems.devs.core.message.Message;
@@ -59,17 +55,30 @@ StateVariableBased {
 	//ID:SVAR:1
 	private static final int ID_MAXTA = 1;
 
+	// Phases, numbered in the order of PHASES
+	private static final int PASSIVE = 0;
+	private static final int ACTIVE = 1;
+	private static final int PORT2_STATE = 2;
+	private static final int PORTFLOW15_STATE = 3;
+	static final Phases PHASES = new Phases("passive", "active", "port2_state", "portFLOW15_state");
+
 	// Declare state variables
 	private PropertyChangeSupport propertyChangeSupport =
 			new PropertyChangeSupport(this);
 	protected ContinuousTimeMarkov ctm = new ContinuousTimeMarkov();
+	protected StateOccupancy occupancy;
+	protected TransitionTable transitions;
+	protected RandomStream rng;
+	protected MetricsRegistry.NodeMetrics metrics;
 	protected double maxTA = Double.MAX_VALUE;
 	private String job;
 	protected Queue<String> queue;
 	protected Queue<Double> time_queue;
 	//ENDID
 	String phase = "passive";
-	String previousPhase = null;
+	int phaseId = PASSIVE;
+	int previousPhase = Phases.NONE;
+	int nextPhase = Phases.NONE;
 	Double sigma = maxTA;
 	Double previousSigma = Double.NaN;
 
@@ -89,6 +98,7 @@ StateVariableBased {
 
 	// End output ports
 	protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+	protected RunContext runContext = RunContext.getDefault();
 	protected double currentTime;
 
 	// This variable is just here so we can use @SuppressWarnings("unused")
@@ -106,6 +116,10 @@ StateVariableBased {
 		super(name, simulator);
 	}
 
+	public void setRunContext(RunContext runContext) {
+		this.runContext = runContext;
+	}
+
 	public void initialize() {
 		super.initialize();
 
@@ -118,29 +132,34 @@ StateVariableBased {
 		int numberOfOutputPorts = 0;
 			numberOfOutputPorts++;
 
-		holdIn("passive", maxTA);
+		holdIn(PASSIVE, maxTA);
 
 		// Initialize Variables
 		//ID:INIT
 		//<CTM>
 
 		ctm = new ContinuousTimeMarkov();
+		occupancy = runContext.getOccupancy().open(getClass().getSimpleName());
+		rng = runContext.getRandomStreams().open(getClass().getSimpleName());
+		metrics = runContext.getMetrics().register(getClass().getSimpleName());
+		metrics.counter("job_received", () -> job_received);
+		metrics.counter("job_dispatched", () -> job_dispatched);
+		metrics.counter("total_jobs_lost", () -> total_jobs_lost);
+		metrics.gauge("arrival_rate", () -> arrival_rate);
+		metrics.gauge("throughput", () -> throughput);
 		ctm.setTimeToNextEvent(0.0);
 		ctm.setOutput(false);
 		String path = getModelsDirectory().getAbsolutePath();
 		path.replace("bin", "src");
 		try {
-			ctm.fillTransitionInfoList(path + File.separator + "xml" + 
-					File.separator + "BEHAVIOR2.xml");
-			TransitionInfo ti;
-			TimeInfo tf;
-			ti = ctm.getTransitionInfoFor("active", "portFLOW15_state");
-            tf = ti.getTInfo();
-            //ti.setProbValue(1.0/numberOfOutputPorts);
+			transitions = runContext.getTransitionTables().open(getClass().getSimpleName(),
+					path + File.separator + "xml" + File.separator + "BEHAVIOR2.xml");
+			transitions.setSelection(runContext.getSuccessorSelection(getClass().getSimpleName()));
+			transitions.bind(PHASES);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		holdIn("passive", maxTA);
+		holdIn(PASSIVE, maxTA);
 		queue = new LinkedList<>();
 		//<CTM>
 
@@ -152,17 +171,17 @@ StateVariableBased {
 	public void internalTransition() {
 		currentTime += sigma;
 
-		if (phaseIs("active")) {
-			getSimulator().modelMessage("Internal transition from active");
+		if (phaseIs(ACTIVE)) {
+			ModelLog.message(getSimulator(), "Internal transition from active");
 
 			//ID:TRA:active
-			holdIn("port2_state", maxTA);
+			holdIn(PORT2_STATE, maxTA);
 			//ENDID
 			// Internal event code
 			//ID:INT:active
 
 			//<CTM>
-			internalTransitionForMarkov("active", maxTA, "");
+			internalTransitionForMarkov(ACTIVE, maxTA, Phases.NONE);
 
 			//<CTM>
 			//ENDID
@@ -173,11 +192,11 @@ StateVariableBased {
 		int counter = 0;
 			counter++;
 		
-		if (phaseIs("portFLOW15_state")) {
-			getSimulator().modelMessage("Internal transition from portFLOW15_state");
+		if (phaseIs(PORTFLOW15_STATE)) {
+			ModelLog.message(getSimulator(), "Internal transition from portFLOW15_state");
 
 			//ID
-			holdIn("passive", maxTA);
+			holdIn(PASSIVE, maxTA);
 			job_dispatched++;
 			if(currentTime!=0)
 				throughput = job_dispatched/currentTime;
@@ -196,14 +215,14 @@ StateVariableBased {
 
 		// Store prior data
 		
-		if (phaseIs("passive")) {
+		if (phaseIs(PASSIVE)) {
 			for (Port in_port : this.getInputPorts())
 				if (x.hasMessages(in_port)) {
 					ArrayList<Message<Serializable>> messageList = in_port.getMessages(x);
 
 					for (int i = 0; i < messageList.size(); i++) {
 						job = (String) messageList.get(i).getData(); //this.getName();//
-						holdIn("active", 0.);
+						holdIn(ACTIVE, 0.);
 						job_received++;
 						if(currentTime>0)
 							arrival_rate = job_received/currentTime;
@@ -235,14 +254,14 @@ StateVariableBased {
 	public MessageBag getOutput() {
 		MessageBag output = new MessageBagImpl();
 
-		if (phaseIs("active")) {
+		if (phaseIs(ACTIVE)) {
 			// Output event code
 			//ID:OUT:active
 			//<CTM>
 
 			int counter = 0;
 			counter++;
-			if (ctm.isOutput() && ctm.getNextState().equals("portFLOW15_state")) {
+			if (ctm.isOutput() && nextPhase == PORTFLOW15_STATE) {
 				//output.add(FLOW15,"FLOW15");
 				output.add(outFLOW15,job); //Modified to preserve I/O identity
 			}
@@ -255,93 +274,51 @@ StateVariableBased {
 	//ID:CUST:0
 	//<CTM>
 	public double[] fillProbabilities(String state) {
-		if (ctm.getSuccs(state).size() == 0) {
+		TransitionTable.State from = transitions.state(state);
+		if (from == null) {
 			return new double[0];
 		}
-		double[] probabilities = new double[ctm.getSuccs(state).size()];
-		for (String succ : ctm.getSuccs(state)) {
-			if (succ.equals(state)) {
-				continue;
-			}
-			com.ms4systems.devs.markov.TransitionInfo ti =
-					ctm.getTransitionInfoFor(state, succ);
-			probabilities[ctm.getIndex(succ)] = ti.getProbValue();
-		}
-		return probabilities;
+		return from.getSuccessors().getExitProbabilities();
 	}
 
-	public void internalTransitionForMarkov(String state, double sta,
-			String phase) {
+	public void internalTransitionForMarkov(int state, double sta,
+			int phase) {
 		double timeToNextEvent = ctm.getTimeToNextEvent();
 		if (timeToNextEvent == 0) {
 			timeToNextEvent = Double.POSITIVE_INFINITY;
-			if (ctm.getSuccs(state).size() == 0) {
+			transitions.advance(currentTime);
+			TransitionTable.State from = transitions.stateForPhase(state);
+			if (from == null || from.isAbsorbing()) {
 				return;
 			}
-			if (ctm.getSuccs(state).size() == 1) {
-				ArrayList succs = ctm.getSuccs(state);
-				if (succs.get(0).equals(state)) {
-					return;
-				}
-			}
-			double sample = ctm.getRand().nextDouble();
-			double min = 0.0;
-			double max = 0.0;
-			boolean found = false;
-			String SelSucc = state;
-			double norm = ctm.normalFactor(state);
-			for (String succ : ctm.getSuccs(state)) {
-				min = max;
-				com.ms4systems.devs.markov.TransitionInfo ti =
-						ctm.getTransitionInfoFor(state, succ);
-				max += ti.getProbValue() / norm;
-				if (min < sample && sample <= max) {
-					found = true;
-					ctm.setNextState(succ);
-					SelSucc = succ;
-					break;
-				}
-			}
-			if (!found) {
-				ctm.setNextState(state);
-			}
-			double time = ctm.timeToNextEvent(state, SelSucc, norm);
+			int succ = from.next(rng);
+			nextPhase = from.getSuccPhase(succ);
+			ctm.setNextState(from.getSuccName(succ));
+			double time = from.sampleTime(succ, rng);
 			ctm.setTimeToNextEvent(time);
 			timeToNextEvent = time;
 			if (timeToNextEvent > sta) {
 				timeToNextEvent = sta;
 				ctm.setTimeToNextEvent(timeToNextEvent);
-				if (!phase.equals("")) {
-					ctm.setNextState(phase);
+				if (phase != Phases.NONE) {
+					nextPhase = phase;
 				} else {
-					ctm.setNextState(state);
+					nextPhase = state;
 				}
+				ctm.setNextState(PHASES.name(nextPhase));
 			}
 		}
-		if (previousPhase != null && previousPhase.equals(state)) {
-			previousPhase = null;
+		if (previousPhase == state) {
+			previousPhase = Phases.NONE;
 			ctm.setTimeToNextEvent(0.0);
-			String nextState = ctm.getNextState();
-			holdIn(nextState, 0.);
+			holdIn(nextPhase, 0.);
 			ctm.setOutput(false);
 		} else {
-			com.ms4systems.devs.markov.TimeInState tm =
-					ctm.getTimeInState(state);
-			if (tm == null) {
-				tm = new com.ms4systems.devs.markov.TimeInState();
-				tm.setStateName(state);
-				tm.setCountInState(0);
-				tm.setElapsedTime(0.);
-				ctm.getTimeInStateList().add(tm);
-			}
 			holdIn(state, timeToNextEvent);
 			ctm.setOutput(true);
 			previousPhase = state;
-			ctm.incCount(tm);
-			ctm.updateElapsedTime(tm, timeToNextEvent);
-			double accLifeTime = ctm.getAccLifeTime() + timeToNextEvent;
-			ctm.setAccLifeTime(accLifeTime);
-			ctm.printTimeInState();
+			ctm.setAccLifeTime(ctm.getAccLifeTime() + timeToNextEvent);
+			occupancy.enter(PHASES.name(state), timeToNextEvent, currentTime);
 		}
 	}
 
@@ -438,18 +415,22 @@ StateVariableBased {
 
 	// Convenience functions
 	protected void passivate() {
-		passivateIn("passive");
+		passivateIn(PASSIVE);
 	}
 
-	protected void passivateIn(String phase) {
+	protected void passivateIn(int phase) {
 		holdIn(phase, Double.POSITIVE_INFINITY);
 	}
 
 	protected void holdIn(String phase, Double sigma) {
-		this.phase = phase;
+		holdIn(PHASES.id(phase), sigma);
+	}
+
+	protected void holdIn(int phase, Double sigma) {
+		this.phaseId = phase;
+		this.phase = PHASES.name(phase);
 		this.sigma = sigma;
-		getSimulator()
-		.modelMessage("Holding in phase " + phase + " for time " + sigma);
+		ModelLog.holding(getSimulator(), this.phase, sigma);
 	}
 
 	protected static File getModelsDirectory() {
@@ -499,7 +480,7 @@ StateVariableBased {
 	}
 
 	protected void msg(String msg) {
-		getSimulator().modelMessage(msg);
+		ModelLog.message(getSimulator(), msg);
 	}
 
 	// Phase display
@@ -507,6 +488,10 @@ StateVariableBased {
 		return this.phase.equals(phase);
 	}
 
+	public boolean phaseIs(int phase) {
+		return phaseId == phase;
+	}
+
 	public String getPhase() {
 		return phase;
 	}
@@ -520,15 +505,6 @@ StateVariableBased {
 	}
 
 	public void appendStrToFile(String fileName, String str) {
-		try {
-			// Open given file in append mode
-			BufferedWriter out = new BufferedWriter(
-					new FileWriter(fileName, true));
-			out.write(str);
-			out.close();
-		}
-		catch (IOException e) {
-			System.out.println("exception occurred" + e);
-		}
+		AnalyticsSink.shared().append(fileName, str);
 	}
 }
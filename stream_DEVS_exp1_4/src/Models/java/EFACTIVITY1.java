@@ -1,4 +1,5 @@
 package Models.java;
+import java.io.IOException;
 import java.io.Serializable;
 
 import com.ms4systems.devs.core.model.impl.CoupledModelImpl;
@@ -12,6 +13,7 @@ public class EFACTIVITY1 extends CoupledModelImpl{
 
 	private static final long serialVersionUID = 1L;
 	protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+	protected RunContext runContext = RunContext.getDefault();
 	public final Port<Serializable> outPORT = 
 		addOutputPort("outPORT", Serializable.class);
 
@@ -20,13 +22,21 @@ public class EFACTIVITY1 extends CoupledModelImpl{
 	}
 
 	public EFACTIVITY1() {
+		this(RunContext.getDefault());
+	}
+
+	/** Builds the model for one run; every atomic model writes to the context's output root. */
+	public EFACTIVITY1(RunContext runContext) {
 		super("EF");
+		this.runContext = runContext;
 		
 		//ACTIVITY1_Generator g = new ACTIVITY1_Generator("Generator", 20.0, 1);
 		//ACTIVITY1_MarkovGenerator g = new ACTIVITY1_MarkovGenerator("Generator");
 		Generator g = new Generator("Generator");
 
-		ACTIVITY1 a = new ACTIVITY1("ACTIVITY1",10);
+		g.setRunContext(runContext);
+
+		ACTIVITY1 a = new ACTIVITY1("ACTIVITY1",10, runContext);
 		
 		addChildModel(g);
 		addChildModel(a);
@@ -38,6 +48,7 @@ public class EFACTIVITY1 extends CoupledModelImpl{
 		addCoupling(g.outM4,a.inM4);
 
 		Transducer t = new Transducer("Transducer");
+		t.setRunContext(runContext);
 		addChildModel(t);
 
 		addCoupling(g.outM1,t.inGeneratedJobs);
@@ -47,21 +58,78 @@ public class EFACTIVITY1 extends CoupledModelImpl{
 		addCoupling(g.outM4,t.inGeneratedJobs);
 	}
 
+	/**
+	 * Sets how often a node writes its trace rows, for example
+	 * setTraceSampling("t1", "every:10") or setTraceSampling("*", "dt:1.0").
+	 * See TraceSampler for the policies; call before the simulation starts.
+	 */
+	public void setTraceSampling(String node, String policy) {
+		runContext.getTraces().setSampling(node, policy);
+	}
+
+	/**
+	 * Sets how a Markov node selects its successors, for example
+	 * setSuccessorSelection("BEHAVIOR3", TransitionTable.Selection.ALIAS).
+	 * Call before the simulation starts.
+	 */
+	public void setSuccessorSelection(String node, TransitionTable.Selection selection) {
+		runContext.setSuccessorSelection(node, selection);
+	}
+
+	/**
+	 * Gives one node a random seed of its own; the other nodes keep the
+	 * streams derived from the run's seed. Call before the simulation starts.
+	 */
+	public void setNodeSeed(String node, long seed) {
+		runContext.getRandomStreams().setNodeSeed(node, seed);
+	}
+
+	/**
+	 * Changes a transition of one node for this run, for example
+	 * changeTransition("BEHAVIOR3", TransitionTable.Change.probability("active", "portf_95_state", 0.5)).
+	 * Made at the node's next step if it is initialized, else when it is.
+	 */
+	public void changeTransition(String node, TransitionTable.Change change) {
+		runContext.getTransitionTables().change(node, change);
+	}
+
+	/**
+	 * Bounds the join queues of sync or BEHAVIOR1, for example
+	 * setJoinBounds("sync", JoinIndex.Bounds.UNBOUNDED.capacity(1000).timeToLive(200.0)).
+	 * The evictions are counted in the node's metrics. Call before the simulation starts.
+	 */
+	public void setJoinBounds(String node, JoinIndex.Bounds bounds) {
+		runContext.setJoinBounds(node, bounds);
+	}
+
 	public static void main(String[] args){
 		SimulationOptionsImpl options = new SimulationOptionsImpl(args, true);
 		EFACTIVITY1 model = new EFACTIVITY1();
 		long iterations = -1;
+		double maxSimTime = 10000;
 		model.options = options;
 		options.setDisableViewer(true);
 		options.setDisableLogging(true);
+		ModelLog.setEnabled(!options.isDisableLogging());
+		//model.setTraceSampling("*", "dt:1.0");
 		if(options.isDisableViewer()){ // Command Line output only
 			Simulation sim = new com.ms4systems.devs.core.simulation.impl.SimulationImpl("EFACTIVITY1 Simulation",model,options);
 			sim.startSimulation(0);
-			sim.setMaxSimulationTime(10000);
+			sim.setMaxSimulationTime(maxSimTime);
 			if(iterations < 0 )
 				sim.simulateIterations(Long.MAX_VALUE);
 			else
 				sim.simulateIterations(iterations);
+			// closed first, so the TracePipeline counts include the rows written on close
+			model.runContext.close();
+			try {
+				model.runContext.getMetrics().snapshot(maxSimTime).write(model.runContext.resultsFile("metrics.csv"));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			AnalyticsSink.shared().closeAll();
+			model.runContext.getOccupancy().report(System.out);
+			model.runContext.getTransitionTables().report(System.out);
 		}else { //Use SimViewer
 			SimViewer viewer = new SimViewer();
 			viewer.open(model,options);
@@ -0,0 +1,431 @@
+package Models.java;
+
+import java.beans.PropertyChangeListener;
+import java.beans.PropertyChangeSupport;
+import java.io.File;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+
+import com.ms4systems.devs.core.message.Message;
+import com.ms4systems.devs.core.message.MessageBag;
+import com.ms4systems.devs.core.message.Port;
+import com.ms4systems.devs.core.message.impl.MessageBagImpl;
+import com.ms4systems.devs.core.model.impl.AtomicModelImpl;
+import com.ms4systems.devs.core.simulation.Simulation;
+import com.ms4systems.devs.core.simulation.Simulator;
+import com.ms4systems.devs.extensions.PhaseBased;
+import com.ms4systems.devs.extensions.StateVariableBased;
+import com.ms4systems.devs.helpers.impl.SimulationOptionsImpl;
+import com.ms4systems.devs.markov.ContinuousTimeMarkov;
+import com.ms4systems.devs.simviewer.standalone.SimViewer;
+
+/**
+ * The Markov action node of the activity models (t1..t4, j1, j2, j31, j32,
+ * j4, drop, threshold, diffusion). A node takes a job on its input port
+ * while passive, walks the chain of xml/&lt;node&gt;.xml from active, and
+ * passes the job on through its output port when the chain reaches the
+ * port's state; a node without an output port (j32, drop) is a sink.
+ *
+ * The nodes differ only in their ports and their file, so they are
+ * subclasses that name them and nothing else:
+ *
+ * <pre>
+ * super(name, simulator, "inFLOW1", "outFLOW4", "portFLOW4_state", true);
+ * </pre>
+ *
+ * The transitions are final and shared by every node, so the JIT compiles
+ * and profiles them once rather than once per copy. The node's name is its
+ * class name: it selects the XML file, the trace file (if traced) and the
+ * node's entries in the run's occupancy, metrics and random streams.
+ */
+public abstract class MarkovActionNode extends AtomicModelImpl implements PhaseBased,
+StateVariableBased {
+	private static final long serialVersionUID = 1L;
+
+	private static final int ID_CTM = 0;
+	private static final int ID_MAXTA = 1;
+
+	// Phases, numbered in the order of PHASES; the port states of the
+	// nodes and the states of their files follow
+	private static final int PASSIVE = 0;
+	private static final int ACTIVE = 1;
+	private static final int PORT2_STATE = 2;
+	static final Phases PHASES = new Phases("passive", "active", "port2_state");
+
+	// Declare state variables
+	private PropertyChangeSupport propertyChangeSupport =
+			new PropertyChangeSupport(this);
+	protected ContinuousTimeMarkov ctm = new ContinuousTimeMarkov();
+	protected StateOccupancy occupancy;
+	protected TransitionTable transitions;
+	protected RandomStream rng;
+	protected MetricsRegistry.NodeMetrics metrics;
+	protected double maxTA = Double.MAX_VALUE;
+	protected String job;
+	String phase = "passive";
+	int phaseId = PASSIVE;
+	int previousPhase = Phases.NONE;
+	int nextPhase = Phases.NONE;
+	Double sigma = maxTA;
+
+	protected int job_received, job_dispatched, total_jobs_lost;
+	protected double arrival_rate, throughput;
+	TraceChannel trace;
+	public String resultsFileName;
+	// End state variables
+
+	protected final Port<Serializable> in;
+	protected final Port<Serializable> out;
+	private final int outPhase;
+	private final String outMessage;
+	private final String[] phaseNames;
+	private final boolean traced;
+
+	protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+	protected RunContext runContext = RunContext.getDefault();
+	protected double currentTime;
+
+	/**
+	 * A node with an input port and, unless outPort is null, an output port
+	 * that the job leaves through when the chain enters outState. A traced
+	 * node writes &lt;node&gt;.csv with its arrival rate and throughput.
+	 */
+	protected MarkovActionNode(String name, Simulator simulator, String inPort,
+			String outPort, String outState, boolean traced) {
+		super(name, simulator);
+		in = addInputPort(inPort, Serializable.class);
+		if (outPort != null) {
+			out = addOutputPort(outPort, Serializable.class);
+			outPhase = PHASES.id(outState);
+			outMessage = "Internal transition from " + outState;
+			phaseNames = new String[] { "active", outState };
+		} else {
+			out = null;
+			outPhase = Phases.NONE;
+			outMessage = null;
+			phaseNames = new String[] { "active" };
+		}
+		this.traced = traced;
+	}
+
+	public void setRunContext(RunContext runContext) {
+		this.runContext = runContext;
+	}
+
+	public void initialize() {
+		super.initialize();
+
+		currentTime = 0;
+		maxTA = Double.MAX_VALUE;
+		String node = getClass().getSimpleName();
+
+		ctm = new ContinuousTimeMarkov();
+		occupancy = runContext.getOccupancy().open(node);
+		rng = runContext.getRandomStreams().open(node);
+		metrics = runContext.getMetrics().register(node);
+		metrics.counter("job_received", () -> job_received);
+		metrics.counter("job_dispatched", () -> job_dispatched);
+		metrics.counter("total_jobs_lost", () -> total_jobs_lost);
+		metrics.gauge("arrival_rate", () -> arrival_rate);
+		metrics.gauge("throughput", () -> throughput);
+		ctm.setTimeToNextEvent(0.0);
+		ctm.setOutput(false);
+		String path = getModelsDirectory().getAbsolutePath();
+		try {
+			transitions = runContext.getTransitionTables().open(node,
+					path + File.separator + "xml" + File.separator + node + ".xml");
+			transitions.setSelection(runContext.getSuccessorSelection(node));
+			transitions.bind(PHASES);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		holdIn(PASSIVE, maxTA);
+		job_dispatched = job_received = 0;
+		total_jobs_lost = 0;
+		arrival_rate = throughput = 0.0;
+		if (traced) {
+			resultsFileName = runContext.resultsFile(node + ".csv");
+			trace = runContext.getTraces().open(resultsFileName,
+					"Simulation time, Job arrival rate, Throughput, Total jobs lost",
+					"dddi");
+		}
+	}
+
+	@Override
+	public final void internalTransition() {
+		currentTime += sigma;
+
+		if (phaseIs(ACTIVE)) {
+			ModelLog.message(getSimulator(), "Internal transition from active");
+			holdIn(PORT2_STATE, maxTA);
+			internalTransitionForMarkov(ACTIVE, maxTA, Phases.NONE);
+			return;
+		}
+
+		if (phaseIs(outPhase)) {
+			ModelLog.message(getSimulator(), outMessage);
+			holdIn(PASSIVE, maxTA);
+			if (trace != null)
+				trace.row(currentTime).col(arrival_rate).col(throughput).col(total_jobs_lost).end();
+			job_dispatched++;
+			if (currentTime != 0)
+				throughput = job_dispatched / currentTime;
+		}
+	}
+
+	@Override
+	public final void externalTransition(double timeElapsed, MessageBag x) {
+		currentTime += timeElapsed;
+		// Subtract time remaining until next internal transition (no effect if sigma == Infinity)
+		sigma -= timeElapsed;
+
+		if (phaseIs(PASSIVE)) {
+			if (x.hasMessages(in)) {
+				ArrayList<Message<Serializable>> messageList = in.getMessages(x);
+				for (int i = 0; i < messageList.size(); i++) {
+					job = (String) messageList.get(i).getData();
+					received(job);
+					holdIn(ACTIVE, 0.);
+					job_received++;
+					if (currentTime > 0)
+						arrival_rate = job_received / currentTime;
+					if (trace != null)
+						trace.row(currentTime).col(arrival_rate).col(throughput).col(total_jobs_lost).end();
+				}
+			}
+		} else {
+			total_jobs_lost++;
+			job_received++;
+			if (currentTime > 0)
+				arrival_rate = job_received / currentTime;
+		}
+	}
+
+	@Override
+	public final void confluentTransition(MessageBag input) {
+		// confluentTransition with internalTransition first (by default)
+		internalTransition();
+		externalTransition(0, input);
+	}
+
+	@Override
+	public final Double getTimeAdvance() {
+		return sigma;
+	}
+
+	@Override
+	public final MessageBag getOutput() {
+		MessageBag output = new MessageBagImpl();
+
+		if (out != null && phaseIs(ACTIVE) && ctm.isOutput() && nextPhase == outPhase && emits(job))
+			output.add(out, job); // the job itself, to preserve I/O identity
+
+		return output;
+	}
+
+	/** Called in the external transition with every job the node takes, for what emits() will read. */
+	protected void received(String job) {
+	}
+
+	/**
+	 * Whether a job that reached the output state leaves the node; all do
+	 * unless a node says otherwise. Called from getOutput(), so it only reads.
+	 */
+	protected boolean emits(String job) {
+		return true;
+	}
+
+	public double[] fillProbabilities(String state) {
+		TransitionTable.State from = transitions.state(state);
+		if (from == null) {
+			return new double[0];
+		}
+		return from.getSuccessors().getExitProbabilities();
+	}
+
+	public final void internalTransitionForMarkov(int state, double sta,
+			int phase) {
+		double timeToNextEvent = ctm.getTimeToNextEvent();
+		if (timeToNextEvent == 0) {
+			timeToNextEvent = Double.POSITIVE_INFINITY;
+			transitions.advance(currentTime);
+			TransitionTable.State from = transitions.stateForPhase(state);
+			if (from == null || from.isAbsorbing()) {
+				return;
+			}
+			int succ = from.next(rng);
+			nextPhase = from.getSuccPhase(succ);
+			ctm.setNextState(from.getSuccName(succ));
+			double time = from.sampleTime(succ, rng);
+			ctm.setTimeToNextEvent(time);
+			timeToNextEvent = time;
+			if (timeToNextEvent > sta) {
+				timeToNextEvent = sta;
+				ctm.setTimeToNextEvent(timeToNextEvent);
+				if (phase != Phases.NONE) {
+					nextPhase = phase;
+				} else {
+					nextPhase = state;
+				}
+				ctm.setNextState(PHASES.name(nextPhase));
+			}
+		}
+		if (previousPhase == state) {
+			previousPhase = Phases.NONE;
+			ctm.setTimeToNextEvent(0.0);
+			holdIn(nextPhase, 0.);
+			ctm.setOutput(false);
+		} else {
+			holdIn(state, timeToNextEvent);
+			ctm.setOutput(true);
+			previousPhase = state;
+			ctm.setAccLifeTime(ctm.getAccLifeTime() + timeToNextEvent);
+			occupancy.enter(PHASES.name(state), timeToNextEvent, currentTime);
+		}
+	}
+
+	/** Runs a node on its own, from the node's main. */
+	protected static void run(MarkovActionNode model, String[] args) {
+		SimulationOptionsImpl options = new SimulationOptionsImpl(args, true);
+
+		// Uncomment the following line to disable SimViewer for this model
+		// options.setDisableViewer(true);
+
+		model.options = options;
+
+		if (options.isDisableViewer()) { // Command line output only
+			Simulation sim =
+					new com.ms4systems.devs.core.simulation.impl.SimulationImpl(
+							model.getClass().getSimpleName() + " Simulation", model, options);
+			sim.startSimulation(0);
+			sim.simulateIterations(Long.MAX_VALUE);
+		} else { // Use SimViewer
+			SimViewer viewer = new SimViewer();
+			viewer.open(model, options);
+		}
+	}
+
+	public void addPropertyChangeListener(String propertyName,
+			PropertyChangeListener listener) {
+		propertyChangeSupport.addPropertyChangeListener(propertyName, listener);
+	}
+
+	public void removePropertyChangeListener(PropertyChangeListener listener) {
+		propertyChangeSupport.removePropertyChangeListener(listener);
+	}
+
+	// Getter/setter for ctm
+	public void setCtm(ContinuousTimeMarkov ctm) {
+		propertyChangeSupport.firePropertyChange("ctm", this.ctm, this.ctm = ctm);
+	}
+
+	public ContinuousTimeMarkov getCtm() {
+		return this.ctm;
+	}
+
+	// Getter/setter for maxTA
+	public void setMaxTA(double maxTA) {
+		propertyChangeSupport.firePropertyChange("maxTA", this.maxTA,
+				this.maxTA = maxTA);
+	}
+
+	public double getMaxTA() {
+		return this.maxTA;
+	}
+
+	// State variables
+	public String[] getStateVariableNames() {
+		return new String[] { "ctm", "maxTA" };
+	}
+
+	public Object[] getStateVariableValues() {
+		return new Object[] { ctm, maxTA };
+	}
+
+	public Class<?>[] getStateVariableTypes() {
+		return new Class<?>[] { ContinuousTimeMarkov.class, Double.class };
+	}
+
+	public void setStateVariableValue(int index, Object value) {
+		switch (index) {
+
+		case ID_CTM:
+			setCtm((ContinuousTimeMarkov) value);
+			return;
+
+		case ID_MAXTA:
+			setMaxTA((Double) value);
+			return;
+
+		default:
+			return;
+		}
+	}
+
+	// Convenience functions
+	protected void passivate() {
+		passivateIn(PASSIVE);
+	}
+
+	protected void passivateIn(int phase) {
+		holdIn(phase, Double.POSITIVE_INFINITY);
+	}
+
+	protected void holdIn(String phase, Double sigma) {
+		holdIn(PHASES.id(phase), sigma);
+	}
+
+	protected final void holdIn(int phase, Double sigma) {
+		this.phaseId = phase;
+		this.phase = PHASES.name(phase);
+		this.sigma = sigma;
+		ModelLog.holding(getSimulator(), this.phase, sigma);
+	}
+
+	protected static File getModelsDirectory() {
+		URI dirUri;
+		File dir;
+		try {
+			dirUri = MarkovActionNode.class.getResource(".").toURI();
+			dir = new File(dirUri);
+		} catch (URISyntaxException e) {
+			e.printStackTrace();
+			throw new RuntimeException(
+					"Could not find Models directory. Invalid model URL: " +
+							MarkovActionNode.class.getResource(".").toString());
+		}
+		while (dir != null && dir.getParentFile() != null) {
+			if (dir.getName().equalsIgnoreCase("java") &&
+					dir.getParentFile().getName().equalsIgnoreCase("models")) {
+				return dir.getParentFile();
+			}
+			dir = dir.getParentFile();
+		}
+		throw new RuntimeException(
+				"Could not find Models directory from model path: " +
+						dirUri.toASCIIString());
+	}
+
+	protected void msg(String msg) {
+		ModelLog.message(getSimulator(), msg);
+	}
+
+	// Phase display
+	public boolean phaseIs(String phase) {
+		return this.phase.equals(phase);
+	}
+
+	public final boolean phaseIs(int phase) {
+		return phaseId == phase;
+	}
+
+	public String getPhase() {
+		return phase;
+	}
+
+	public String[] getPhaseNames() {
+		return phaseNames.clone();
+	}
+}
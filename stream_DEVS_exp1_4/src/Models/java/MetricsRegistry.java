@@ -0,0 +1,191 @@
+package Models.java;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and histograms of every node, kept in memory instead of
+ * being read back from the per-event CSV rows.
+ *
+ * Every run has its own registry (see {@link RunContext}). A node registers
+ * in initialize() and gets its {@link NodeMetrics}.
+ * Counters and gauges that the model already keeps in a field are
+ * registered as suppliers that read the field, so updating them costs
+ * nothing; {@link LogHistogram}s record one value per job.
+ *
+ * <pre>
+ * metrics = runContext.getMetrics().register(getClass().getSimpleName());
+ * metrics.counter("job_received", () -&gt; job_received);
+ * metrics.gauge("throughput", () -&gt; throughput);
+ * waitingTimes = metrics.histogram("waiting_time");
+ * </pre>
+ *
+ * {@link #snapshot(double)} copies every value at some simulation time;
+ * EFACTIVITY1 writes one at the end of the run with
+ * {@link Snapshot#write(String)}.
+ */
+public class MetricsRegistry {
+
+	private final Map<String, NodeMetrics> nodes = new LinkedHashMap<String, NodeMetrics>();
+
+	/** Registers a node, replacing what it registered before (a re-initialized model). */
+	public synchronized NodeMetrics register(String node) {
+		NodeMetrics metrics = new NodeMetrics(node);
+		nodes.put(node, metrics);
+		return metrics;
+	}
+
+	public synchronized NodeMetrics get(String node) {
+		return nodes.get(node);
+	}
+
+	public synchronized Snapshot snapshot(double simulationTime) {
+		Snapshot snapshot = new Snapshot(simulationTime);
+		for (NodeMetrics node : nodes.values())
+			node.snapshotInto(snapshot);
+		return snapshot;
+	}
+
+	public static class NodeMetrics {
+		private final String node;
+		private final Map<String, LongSupplier> counters = new LinkedHashMap<String, LongSupplier>();
+		private final Map<String, DoubleUnaryOperator> gauges = new LinkedHashMap<String, DoubleUnaryOperator>();
+		private final Map<String, LogHistogram> histograms = new LinkedHashMap<String, LogHistogram>();
+
+		NodeMetrics(String node) {
+			this.node = node;
+		}
+
+		public String getNode() {
+			return node;
+		}
+
+		/** A counter the registry owns. */
+		public synchronized Counter counter(String name) {
+			Counter counter = new Counter();
+			counters.put(name, counter);
+			return counter;
+		}
+
+		/** A counter the model keeps itself. */
+		public synchronized void counter(String name, LongSupplier value) {
+			counters.put(name, value);
+		}
+
+		public synchronized void gauge(String name, DoubleSupplier value) {
+			gauges.put(name, now -> value.getAsDouble());
+		}
+
+		/** A gauge that depends on when it is read, such as a time average; it gets the snapshot's time. */
+		public synchronized void gauge(String name, DoubleUnaryOperator valueAt) {
+			gauges.put(name, valueAt);
+		}
+
+		public synchronized LogHistogram histogram(String name) {
+			LogHistogram histogram = new LogHistogram();
+			histograms.put(name, histogram);
+			return histogram;
+		}
+
+		synchronized void snapshotInto(Snapshot s) {
+			for (Map.Entry<String, LongSupplier> e : counters.entrySet())
+				s.entries.add(new Entry(node, e.getKey(), "counter", e.getValue().getAsLong(), null));
+			for (Map.Entry<String, DoubleUnaryOperator> e : gauges.entrySet())
+				s.entries.add(new Entry(node, e.getKey(), "gauge", e.getValue().applyAsDouble(s.simulationTime), null));
+			for (Map.Entry<String, LogHistogram> e : histograms.entrySet())
+				s.entries.add(new Entry(node, e.getKey(), "histogram", Double.NaN, e.getValue().copy()));
+		}
+	}
+
+	public static class Counter implements LongSupplier {
+		private long value;
+
+		public void inc() {
+			value++;
+		}
+
+		public void add(long n) {
+			value += n;
+		}
+
+		@Override
+		public long getAsLong() {
+			return value;
+		}
+	}
+
+	public static class Entry {
+		public final String node;
+		public final String name;
+		public final String type;
+		/** Counter or gauge value, NaN for histograms. */
+		public final double value;
+		/** A copy of the histogram, null for counters and gauges. */
+		public final LogHistogram histogram;
+
+		Entry(String node, String name, String type, double value, LogHistogram histogram) {
+			this.node = node;
+			this.name = name;
+			this.type = type;
+			this.value = value;
+			this.histogram = histogram;
+		}
+	}
+
+	/** Every metric at one simulation time; later updates do not change it. */
+	public static class Snapshot {
+		private final double simulationTime;
+		final List<Entry> entries = new ArrayList<Entry>();
+
+		Snapshot(double simulationTime) {
+			this.simulationTime = simulationTime;
+		}
+
+		public double getSimulationTime() {
+			return simulationTime;
+		}
+
+		public List<Entry> getEntries() {
+			return entries;
+		}
+
+		public Entry get(String node, String name) {
+			for (Entry e : entries)
+				if (e.node.equals(node) && e.name.equals(name))
+					return e;
+			return null;
+		}
+
+		/**
+		 * Writes one CSV row per metric. Counters and gauges fill the value
+		 * column, histograms the count and distribution columns.
+		 */
+		public void write(String fileName) throws IOException {
+			AnalyticsSink sink = AnalyticsSink.shared();
+			AnalyticsSink.Channel out = sink.open(fileName,
+					"Simulation time, Node, Metric, Type, Value, Count, Mean, Min, P50, P90, P99, Max\n");
+			StringBuilder sb = new StringBuilder(256);
+			for (Entry e : entries) {
+				sb.setLength(0);
+				sb.append(simulationTime).append(',').append(e.node).append(',').append(e.name)
+						.append(',').append(e.type).append(',');
+				LogHistogram h = e.histogram;
+				if (h == null)
+					sb.append(e.type.equals("counter") ? "" + (long) e.value : "" + e.value).append(",,,,,,,");
+				else
+					sb.append(',').append(h.getCount()).append(',').append(h.getMean()).append(',').append(h.getMin())
+							.append(',').append(h.getQuantile(0.5)).append(',').append(h.getQuantile(0.9))
+							.append(',').append(h.getQuantile(0.99)).append(',').append(h.getMax());
+				sb.append('\n');
+				out.append(sb);
+			}
+			sink.close(out);
+		}
+	}
+}
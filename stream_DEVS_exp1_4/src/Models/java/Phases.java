@@ -0,0 +1,63 @@
+package Models.java;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The phases of a model class, numbered so that the model keeps its phase
+ * as an int and compares it with == instead of String.equals. The names
+ * given to the constructor are numbered 0, 1, 2, ... in order, which lets
+ * the model declare them as constants:
+ *
+ * <pre>
+ * private static final int PASSIVE = 0;
+ * private static final int ACTIVE = 1;
+ * static final Phases PHASES = new Phases("passive", "active");
+ * </pre>
+ *
+ * Names seen later, such as the states of a transition file, are numbered
+ * from there on; a number never changes and {@link #name(int)} gives the
+ * name back for getPhase() and SimViewer. An instance is shared by all
+ * models of the class and is thread safe.
+ */
+public final class Phases {
+
+	/** No phase, for an unset previous or next phase. */
+	public static final int NONE = -1;
+
+	private final Map<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private volatile String[] names = new String[0];
+
+	public Phases(String... names) {
+		for (String name : names)
+			if (id(name) != this.names.length - 1)
+				throw new IllegalArgumentException("duplicate phase " + name);
+	}
+
+	/** The number of a phase, assigned the first time the name is seen. */
+	public int id(String name) {
+		Integer id = ids.get(name);
+		return id != null ? id : add(name);
+	}
+
+	private synchronized int add(String name) {
+		Integer id = ids.get(name);
+		if (id != null)
+			return id;
+		String[] grown = Arrays.copyOf(names, names.length + 1);
+		grown[names.length] = name;
+		names = grown;
+		ids.put(name, names.length - 1);
+		return names.length - 1;
+	}
+
+	/** The name of a phase, or null for {@link #NONE}. */
+	public String name(int id) {
+		return id == NONE ? null : names[id];
+	}
+
+	public int size() {
+		return names.length;
+	}
+}
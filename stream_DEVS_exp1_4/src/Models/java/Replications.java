@@ -0,0 +1,89 @@
+package Models.java;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ms4systems.devs.core.simulation.Simulation;
+import com.ms4systems.devs.helpers.impl.SimulationOptionsImpl;
+
+/**
+ * Runs EFACTIVITY1 once per seed in this JVM and writes the mean and
+ * standard deviation of sync's average queue size and the Transducer's
+ * turnaround time over all seeds (see {@link SeedAggregator}).
+ *
+ * <pre>
+ * java Models.java.Replications &lt;experiment&gt; &lt;seeds&gt; [first seed] [threads]
+ * </pre>
+ *
+ * Every seed runs in its own {@link RunContext} and writes its CSVs to
+ * ExpResults/&lt;experiment&gt;/seed&lt;n&gt;, the layout plots.py reads. The
+ * summary is written to ExpResults/&lt;experiment&gt;/summary.csv on the same
+ * 2000 point time grid plots.py uses.
+ *
+ * With more than one thread the seeds run in parallel. Every run draws
+ * from its own {@link RandomStreams}, so runs share no random state.
+ */
+public class Replications {
+
+	static final double MAX_SIM_TIME = 10000;
+	static final int GRID_POINTS = 2000;
+	static final File ROOT = new File("ExpResults");
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("usage: Replications <experiment> <seeds> [first seed] [threads]");
+			return;
+		}
+		final String experiment = args[0];
+		int seeds = Integer.parseInt(args[1]);
+		final long firstSeed = args.length > 2 ? Long.parseLong(args[2]) : RunContext.DEFAULT_SEED;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+		final SeedAggregator aggregator = new SeedAggregator(0, MAX_SIM_TIME, GRID_POINTS);
+		aggregator.track("sync", "Average queue size");
+		aggregator.track("ACTIVITY1", "Turnaround time");
+		ModelLog.setEnabled(false);
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		for (int i = 0; i < seeds; i++) {
+			final int index = i + 1;
+			runs.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					RunContext context = RunContext.forReplication(ROOT, experiment, index, firstSeed + index - 1);
+					context.setReplication(aggregator.startReplication());
+					Replications.run(context);
+					context.getReplication().end();
+					System.out.println("seed " + context.getSeed() + " done");
+				}
+			}));
+		}
+		for (Future<?> run : runs)
+			run.get();
+		pool.shutdown();
+
+		String summary = new File(new File(ROOT, experiment), "summary.csv").getPath();
+		aggregator.writeSummary(summary);
+		AnalyticsSink.shared().closeAll();
+		System.out.println(seeds + " seeds -> " + summary);
+	}
+
+	static void run(RunContext context) {
+		SimulationOptionsImpl options = new SimulationOptionsImpl(new String[0], true);
+		options.setDisableViewer(true);
+		options.setDisableLogging(true);
+		EFACTIVITY1 model = new EFACTIVITY1(context);
+		model.options = options;
+		Simulation sim = new com.ms4systems.devs.core.simulation.impl.SimulationImpl("EFACTIVITY1 Simulation",model,options);
+		sim.startSimulation(0);
+		sim.setMaxSimulationTime(MAX_SIM_TIME);
+		sim.simulateIterations(Long.MAX_VALUE);
+		// all rows must reach the aggregator and the files before the run counts as done
+		context.close();
+	}
+}
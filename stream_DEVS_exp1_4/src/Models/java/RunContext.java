@@ -0,0 +1,185 @@
+package Models.java;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Everything that belongs to one simulation run: the directory the models
+ * write their results to, the seed and the random streams derived from it,
+ * and the trace pipeline, metrics and state occupancy the nodes register
+ * with. EFACTIVITY1 hands its context
+ * down to every atomic model through setRunContext before the run starts.
+ *
+ * Runs with different contexts share nothing but the {@link AnalyticsSink},
+ * so several replications can run in one JVM, or several JVMs in one
+ * working directory, as long as their output roots differ.
+ *
+ * The default context writes to src/Models/csv under the working
+ * directory, with the seed Generator has always used.
+ *
+ * It also says how the Markov nodes select successors
+ * ({@link TransitionTable.Selection}); -Dmarkov.select sets the same list as
+ * {@link #setSuccessorSelection(String)}, e.g. BEHAVIOR3=alias,*=cumulative.
+ * And it holds the limits of the join queues of sync and BEHAVIOR1
+ * ({@link JoinIndex.Bounds}), which are unbounded unless set.
+ */
+public class RunContext {
+
+	public static final long DEFAULT_SEED = 2349991 + 19;
+
+	private static final RunContext defaultContext = new RunContext(
+			new File(System.getProperty("user.dir"), "src" + File.separator + "Models" + File.separator + "csv"),
+			DEFAULT_SEED);
+
+	private final File outputRoot;
+	private final long seed;
+	private final MetricsRegistry metrics;
+	private final StateOccupancy.Registry occupancy = new StateOccupancy.Registry();
+	private final RandomStreams random;
+	private final TransitionTable.Registry transitionTables = new TransitionTable.Registry();
+	private TracePipeline traces;
+	// the pipeline whose counters are in metrics
+	private TracePipeline meteredTraces;
+	private SeedAggregator.Replication replication;
+	private final Map<String, TransitionTable.Selection> selection = new HashMap<String, TransitionTable.Selection>();
+	private final Map<String, JoinIndex.Bounds> joinBounds = new HashMap<String, JoinIndex.Bounds>();
+
+	public RunContext(File outputRoot, long seed) {
+		this.outputRoot = outputRoot;
+		this.seed = seed;
+		this.metrics = new MetricsRegistry();
+		this.random = new RandomStreams(seed);
+		setSuccessorSelection(System.getProperty("markov.select", ""));
+	}
+
+	/** The context of models that were not given one. */
+	public static RunContext getDefault() {
+		return defaultContext;
+	}
+
+	/** A context writing to root/experiment/seed&lt;index&gt;, the layout plots.py reads. */
+	public static RunContext forReplication(File root, String experiment, int index, long seed) {
+		return new RunContext(new File(new File(root, experiment), "seed" + index), seed);
+	}
+
+	public File getOutputRoot() {
+		return outputRoot;
+	}
+
+	/** Path of a results file of this run. */
+	public String resultsFile(String name) {
+		return new File(outputRoot, name).getPath();
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+
+	public StateOccupancy.Registry getOccupancy() {
+		return occupancy;
+	}
+
+	/** The Markov transition tables the nodes opened. */
+	public TransitionTable.Registry getTransitionTables() {
+		return transitionTables;
+	}
+
+	/** The random streams of the nodes, rooted at this run's seed. */
+	public RandomStreams getRandomStreams() {
+		return random;
+	}
+
+	/**
+	 * The trace pipeline of this run, started on first use and again after
+	 * {@link #close()}. The default context uses {@link TracePipeline#shared()}.
+	 * Its row counts are registered as the metrics of node TracePipeline.
+	 */
+	public synchronized TracePipeline getTraces() {
+		TracePipeline pipeline;
+		if (this == defaultContext)
+			pipeline = TracePipeline.shared();
+		else {
+			if (traces == null || traces.isClosed())
+				traces = TracePipeline.fromSystemProperties(AnalyticsSink.shared());
+			pipeline = traces;
+		}
+		pipeline.setReplication(replication);
+		if (pipeline != meteredTraces) {
+			meteredTraces = pipeline;
+			MetricsRegistry.NodeMetrics m = metrics.register("TracePipeline");
+			m.counter("rows", pipeline::getPublished);
+			m.counter("dropped", pipeline::getDropped);
+			m.counter("spilled", pipeline::getSpilled);
+			m.counter("producer_waits", pipeline::getBlocked);
+		}
+		return pipeline;
+	}
+
+	public synchronized SeedAggregator.Replication getReplication() {
+		return replication;
+	}
+
+	/** Feeds the traces of this run into a {@link SeedAggregator}; set before the run starts. */
+	public synchronized void setReplication(SeedAggregator.Replication replication) {
+		this.replication = replication;
+	}
+
+	/**
+	 * Sets how a node selects its successors; node is the model's class name
+	 * or "*" for the others. Applies to models initialized afterwards.
+	 */
+	public synchronized void setSuccessorSelection(String node, TransitionTable.Selection selection) {
+		this.selection.put(node, selection);
+	}
+
+	/** Sets several nodes at once from a list like {@code BEHAVIOR3=alias,*=cumulative}. */
+	public synchronized void setSuccessorSelection(String selections) {
+		for (String entry : selections.split(",")) {
+			if (entry.trim().isEmpty())
+				continue;
+			int eq = entry.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("Bad successor selection entry: " + entry);
+			setSuccessorSelection(entry.substring(0, eq).trim(),
+					TransitionTable.Selection.parse(entry.substring(eq + 1)));
+		}
+	}
+
+	public synchronized TransitionTable.Selection getSuccessorSelection(String node) {
+		TransitionTable.Selection s = selection.get(node);
+		if (s == null)
+			s = selection.get("*");
+		return s == null ? TransitionTable.Selection.CUMULATIVE : s;
+	}
+
+	/**
+	 * Sets the limits of a join node's queues; node is the model's class
+	 * name or "*" for the others. Applies to models initialized afterwards.
+	 */
+	public synchronized void setJoinBounds(String node, JoinIndex.Bounds bounds) {
+		joinBounds.put(node, bounds);
+	}
+
+	public synchronized JoinIndex.Bounds getJoinBounds(String node) {
+		JoinIndex.Bounds b = joinBounds.get(node);
+		if (b == null)
+			b = joinBounds.get("*");
+		return b == null ? JoinIndex.Bounds.UNBOUNDED : b;
+	}
+
+	/**
+	 * Writes the pending trace rows of this run, stops its writer thread and
+	 * closes the trace files it opened, releasing their buffers.
+	 */
+	public synchronized void close() {
+		if (this == defaultContext)
+			TracePipeline.closeShared();
+		else if (traces != null)
+			traces.close();
+	}
+}
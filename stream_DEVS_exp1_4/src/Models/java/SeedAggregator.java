@@ -0,0 +1,232 @@
+package Models.java;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Averages trace metrics over replications while they run, instead of
+ * reloading every seed's CSV afterwards. Each tracked metric is a column of
+ * a node's trace, for example:
+ *
+ * <pre>
+ * SeedAggregator agg = new SeedAggregator(0, 10000, 2000);
+ * agg.track("sync", "Average queue size");
+ * agg.track("ACTIVITY1", "Turnaround time");
+ * // for every seed:
+ * context.setReplication(agg.startReplication());
+ * run; context.getReplication().end();
+ * agg.writeSummary("ExpResults/exp1/summary.csv");
+ * </pre>
+ *
+ * Rows reach the aggregator from {@link TraceChannel#end()} before any
+ * sampling. Every replication is interpolated onto a fixed linspace grid
+ * the way plots.py does it: linear between samples, repeated times
+ * averaged, missing values skipped and the end values held outside the
+ * sampled range. Each grid point keeps a running mean and variance
+ * (Welford), so memory depends on the grid size only, not on the number of
+ * seeds. The grid must be fixed before the first replication, so plots.py's
+ * quantile grid is not available here.
+ *
+ * Several replications may run at the same time, each on its own thread.
+ */
+public class SeedAggregator {
+
+	private final double[] grid;
+	private final List<Metric> metrics = new ArrayList<Metric>();
+	private int replications;
+
+	public SeedAggregator(double start, double end, int points) {
+		if (points < 2 || end <= start)
+			throw new IllegalArgumentException("Need at least 2 points on a non-empty range");
+		grid = new double[points];
+		for (int i = 0; i < points; i++)
+			grid[i] = start + (end - start) * i / (points - 1);
+	}
+
+	/** Tracks a column of a node's trace; node as in {@link TracePipeline#setSampling(String, String)}. */
+	public synchronized void track(String node, String column) {
+		metrics.add(new Metric(node, column, grid.length));
+	}
+
+	public synchronized int getReplications() {
+		return replications;
+	}
+
+	public double[] getGrid() {
+		return grid.clone();
+	}
+
+	/** Starts feeding one replication; call {@link Replication#end()} when it is done. */
+	public Replication startReplication() {
+		return new Replication();
+	}
+
+	/**
+	 * Writes one row per grid point: the time, then the mean and standard
+	 * deviation of every metric over the replications seen so far.
+	 */
+	public synchronized void writeSummary(String fileName) throws IOException {
+		StringBuilder header = new StringBuilder("Simulation time");
+		for (Metric m : metrics)
+			header.append(", ").append(m.column).append(" mean, ").append(m.column).append(" std");
+		AnalyticsSink.Channel out = AnalyticsSink.shared().open(fileName, header + "\n");
+		StringBuilder sb = new StringBuilder(256);
+		for (int i = 0; i < grid.length; i++) {
+			sb.setLength(0);
+			sb.append(grid[i]);
+			for (Metric m : metrics) {
+				synchronized (m) {
+					if (m.count[i] == 0) {
+						sb.append(",,");
+						continue;
+					}
+					// population deviation, as numpy's std() in plots.py
+					sb.append(',').append(m.mean[i]).append(',').append(Math.sqrt(m.m2[i] / m.count[i]));
+				}
+			}
+			sb.append('\n');
+			out.append(sb);
+		}
+		out.close();
+	}
+
+	/** The interpolation state of one replication. */
+	public class Replication {
+		private final List<Cursor> cursors = new ArrayList<Cursor>();
+		private boolean ended;
+
+		Replication() {
+			synchronized (SeedAggregator.this) {
+				for (Metric m : metrics)
+					cursors.add(new Cursor(m));
+			}
+		}
+
+		/** Returns the taps for a channel being opened, or null if none of its columns is tracked. */
+		synchronized Tap[] tapsFor(String node, TraceLayout layout) {
+			List<Tap> taps = new ArrayList<Tap>();
+			String[] columns = layout.getHeader().split(",");
+			for (Cursor c : cursors) {
+				if (!c.metric.node.equals(node))
+					continue;
+				for (int i = 0; i < columns.length; i++)
+					if (columns[i].trim().equalsIgnoreCase(c.metric.column))
+						taps.add(new Tap(c, i));
+			}
+			return taps.isEmpty() ? null : taps.toArray(new Tap[taps.size()]);
+		}
+
+		/** Completes the replication: holds the last values up to the end of the grid. */
+		public synchronized void end() {
+			if (ended)
+				return;
+			ended = true;
+			for (Cursor c : cursors)
+				c.finish();
+			synchronized (SeedAggregator.this) {
+				replications++;
+			}
+		}
+	}
+
+	/** Feeds one column of a channel's rows into a metric. */
+	static class Tap {
+		private final Cursor cursor;
+		private final int column;
+
+		Tap(Cursor cursor, int column) {
+			this.cursor = cursor;
+			this.column = column;
+		}
+
+		void record(double[] row, int width) {
+			if (column < width)
+				cursor.sample(row[0], row[column]);
+		}
+	}
+
+	private static class Metric {
+		final String node;
+		final String column;
+		final long[] count;
+		final double[] mean;
+		final double[] m2;
+
+		Metric(String node, String column, int points) {
+			this.node = node;
+			this.column = column;
+			count = new long[points];
+			mean = new double[points];
+			m2 = new double[points];
+		}
+
+		synchronized void add(int i, double y) {
+			long n = ++count[i];
+			double delta = y - mean[i];
+			mean[i] += delta / n;
+			m2[i] += delta * (y - mean[i]);
+		}
+	}
+
+	/** One replication's progress along the grid for one metric. */
+	private class Cursor {
+		final Metric metric;
+
+		// last completed sample, samples at the pending time, next grid point
+		private double lastT, lastY;
+		private boolean started;
+		private double pendingT, pendingSum;
+		private int pendingCount;
+		private int next;
+
+		Cursor(Metric metric) {
+			this.metric = metric;
+		}
+
+		void sample(double t, double y) {
+			if (y != y || t != t)
+				return;
+			if (pendingCount > 0 && t == pendingT) {
+				pendingSum += y;
+				pendingCount++;
+				return;
+			}
+			if (pendingCount > 0 && t < pendingT)
+				return; // out of order, plots.py drops these too
+			completePending();
+			pendingT = t;
+			pendingSum = y;
+			pendingCount = 1;
+		}
+
+		void finish() {
+			completePending();
+			if (!started)
+				return;
+			while (next < grid.length)
+				metric.add(next++, lastY);
+		}
+
+		private void completePending() {
+			if (pendingCount == 0)
+				return;
+			double t = pendingT, y = pendingSum / pendingCount;
+			pendingCount = 0;
+			if (!started) {
+				// before the first sample the value is held
+				while (next < grid.length && grid[next] <= t)
+					metric.add(next++, y);
+				started = true;
+			} else {
+				double slope = (y - lastY) / (t - lastT);
+				while (next < grid.length && grid[next] <= t) {
+					metric.add(next, lastY + slope * (grid[next] - lastT));
+					next++;
+				}
+			}
+			lastT = t;
+			lastY = y;
+		}
+	}
+}
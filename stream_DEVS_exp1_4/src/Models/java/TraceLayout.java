@@ -0,0 +1,68 @@
+package Models.java;
+
+/**
+ * Column layout of one trace file: the CSV header line exactly as the models
+ * write it, one kind letter per column ('d' printed like a double, 'i' like
+ * an int) and the token printed for a missing (NaN) value.
+ */
+public class TraceLayout {
+
+	private final String header;
+	private final String kinds;
+	private final String missingToken;
+	private final String[] columns;
+	private final boolean[] integer;
+
+	public TraceLayout(String header, String kinds, String missingToken) {
+		this.header = header;
+		this.kinds = kinds;
+		this.missingToken = missingToken;
+		this.columns = header.split(",\\s*");
+		if (kinds.length() != columns.length || columns.length > TraceRing.MAX_COLUMNS)
+			throw new IllegalArgumentException("Column kinds '" + kinds
+					+ "' do not match header: " + header);
+		this.integer = new boolean[kinds.length()];
+		for (int i = 0; i < integer.length; i++)
+			integer[i] = kinds.charAt(i) == 'i';
+	}
+
+	public String getHeader() {
+		return header;
+	}
+
+	public String getKinds() {
+		return kinds;
+	}
+
+	public String getMissingToken() {
+		return missingToken;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public String getColumn(int column) {
+		return columns[column];
+	}
+
+	public boolean isInteger(int column) {
+		return integer[column];
+	}
+
+	/** Formats one row exactly like ""+a+","+b+... did in the models. */
+	public void format(StringBuilder sb, double[] values, int n) {
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				sb.append(',');
+			double v = values[i];
+			if (v != v)
+				sb.append(missingToken);
+			else if (integer[i])
+				sb.append((long) v);
+			else
+				sb.append(v);
+		}
+		sb.append('\n');
+	}
+}
@@ -0,0 +1,909 @@
+package Models.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * The transitions of a ProbDEVS XML file (the one ctm.fillTransitionInfoList
+ * reads), compiled once in initialize() so that a Markov step does no string
+ * lookups. States are numbered in the order they appear in the file; every
+ * state keeps its successors with their normalized cumulative probabilities
+ * and a time sampler per transition.
+ *
+ * <pre>
+ * transitions = runContext.getTransitionTables().open(getClass().getSimpleName(), xmlFile);
+ * TransitionTable.State from = transitions.state("active");
+ * int succ = from.next(rng);
+ * double time = from.sampleTime(succ, rng);
+ * </pre>
+ *
+ * A model that keeps its phase as an int binds the table to its
+ * {@link Phases}; it then finds a state with {@link #stateForPhase(int)}
+ * and gets the successor's phase with {@link State#getSuccPhase(int)}.
+ *
+ * Degenerate transitions take a fast path found when the file is compiled:
+ * a state with a single successor selects it without a draw, and a time
+ * with no variance (Uniform with Lower = Upper, Normal with Sigma 0) is
+ * returned without one. {@link Registry#report(PrintStream)} lists the
+ * states that got it.
+ *
+ * A view can be changed while the model runs (see {@link Change}), for
+ * parameter sweeps without editing the file or building the model again.
+ * Only the simulation thread changes it: a change from another thread is
+ * posted and made by the next {@link #advance(double)}. Every change is
+ * checked when it is applied or posted, against the state's row with the
+ * changes already waiting, so making it never fails later in the run.
+ *
+ * A file is parsed once per JVM. The compiled form is immutable and cached
+ * by path, modification time and length, so every node of every
+ * replication shares it; {@link #load(String)} only hands out a new view,
+ * whose own settings (the selection) do not affect other views. An edited
+ * file is parsed again on the next load.
+ *
+ * By default successors are selected exactly like the scan the models did
+ * before (first successor whose cumulative probability reaches the sample).
+ * {@link Selection#ALIAS} selects in constant time from a Walker/Vose alias
+ * table instead, for states with many successors; it consumes the same one
+ * sample per step but maps it to successors differently, so a seed takes a
+ * different (equally distributed) path.
+ *
+ * Times are drawn from the TimeInfo of the transition with the node's
+ * {@link RandomStream}, in place of ctm.timeToNextEvent: Uniform from Lower
+ * to Upper, Exponential with mean Mean, Normal with Mean and Sigma (cut at
+ * 0). TimeSamplerTest checks every TimeInfo of the shipped files against
+ * its distribution. The models no longer fill ctm from the file; it only
+ * keeps their Markov state.
+ */
+public class TransitionTable {
+
+	private static final Map<String, Cached> cache = new ConcurrentHashMap<String, Cached>();
+	private static final AtomicLong parses = new AtomicLong();
+	private static final AtomicLong hits = new AtomicLong();
+
+	private final Compiled compiled;
+	private final State[] states;
+	private Selection selection = Selection.CUMULATIVE;
+	private State[] byPhase = new State[0];
+	// changes waiting for their simulation time, in time order
+	private final List<Change> pending = new ArrayList<Change>();
+	private double nextDue = Double.POSITIVE_INFINITY;
+	// changes posted from other threads, taken up by advance()
+	private final Queue<Change> posted = new ConcurrentLinkedQueue<Change>();
+
+	private TransitionTable(Compiled compiled) {
+		this.compiled = compiled;
+		states = new State[compiled.rows.length];
+		for (int i = 0; i < states.length; i++)
+			states[i] = new State(compiled.rows[i]);
+	}
+
+	/** A view of the file's transitions, parsed only if the cache has no current copy. */
+	public static TransitionTable load(String fileName) throws IOException {
+		File file = new File(fileName).getAbsoluteFile();
+		long modified = file.lastModified(), length = file.length();
+		String key = file.getPath();
+		Cached cached = cache.get(key);
+		if (cached != null && cached.modified == modified && cached.length == length) {
+			hits.incrementAndGet();
+			return new TransitionTable(cached.compiled);
+		}
+		Compiled compiled = parse(file);
+		parses.incrementAndGet();
+		cache.put(key, new Cached(modified, length, compiled));
+		return new TransitionTable(compiled);
+	}
+
+	/** Number of files parsed and of loads served from the cache, since start or {@link #clearCache()}. */
+	public static long getParseCount() {
+		return parses.get();
+	}
+
+	public static long getCacheHits() {
+		return hits.get();
+	}
+
+	public static void clearCache() {
+		cache.clear();
+		parses.set(0);
+		hits.set(0);
+	}
+
+	private static Compiled parse(File file) throws IOException {
+		Document doc;
+		try {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+		} catch (Exception e) {
+			throw new IOException("Could not read transitions from " + file, e);
+		}
+		List<String> names = new ArrayList<String>();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<List<Transition>> out = new ArrayList<List<Transition>>();
+		NodeList infos = doc.getElementsByTagName("TransitionInfo");
+		for (int i = 0; i < infos.getLength(); i++) {
+			Element e = (Element) infos.item(i);
+			int from = id(text(e, "StartState"), names, ids, out);
+			int to = id(text(e, "EndState"), names, ids, out);
+			double prob = Double.parseDouble(text(e, "ProbValue"));
+			if (!(prob >= 0) || Double.isInfinite(prob))
+				throw new IOException("Invalid ProbValue " + prob + " from " + names.get(from) + " to "
+						+ names.get(to) + " in " + file);
+			NodeList time = e.getElementsByTagName("TimeInfo");
+			TimeSampler sampler = time.getLength() > 0 ? TimeSampler.of((Element) time.item(0)) : TimeSampler.ZERO;
+			out.get(from).add(new Transition(to, prob, sampler));
+		}
+		String[] stateNames = names.toArray(new String[names.size()]);
+		Row[] rows = new Row[stateNames.length];
+		try {
+			for (int i = 0; i < rows.length; i++)
+				rows[i] = Row.of(i, stateNames, out.get(i));
+		} catch (IllegalArgumentException e) {
+			throw new IOException(e.getMessage() + " in " + file, e);
+		}
+		return new Compiled(stateNames, rows);
+	}
+
+	private static int id(String name, List<String> names, Map<String, Integer> ids, List<List<Transition>> out) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+			out.add(new ArrayList<Transition>());
+		}
+		return id;
+	}
+
+	private static String text(Element parent, String tag) {
+		NodeList nodes = parent.getElementsByTagName(tag);
+		return nodes.getLength() == 0 ? "" : nodes.item(0).getTextContent().trim();
+	}
+
+	/** How successors are selected. */
+	public enum Selection {
+		/** Linear or binary search over the cumulative probabilities. */
+		CUMULATIVE,
+		/** Walker/Vose alias table, O(1) whatever the fan-out. */
+		ALIAS;
+
+		public static Selection parse(String name) {
+			return valueOf(name.trim().toUpperCase());
+		}
+	}
+
+	public Selection getSelection() {
+		return selection;
+	}
+
+	public void setSelection(Selection selection) {
+		this.selection = selection;
+		for (State s : states)
+			s.alias = selection == Selection.ALIAS;
+	}
+
+	public int getStateCount() {
+		return states.length;
+	}
+
+	public String getStateName(int id) {
+		return compiled.names[id];
+	}
+
+	/** The state with this name, or null if the file has no transition from or to it. */
+	public State state(String name) {
+		Integer id = compiled.ids.get(name);
+		return id == null ? null : states[id];
+	}
+
+	public State state(int id) {
+		return states[id];
+	}
+
+	/**
+	 * Numbers the states with the model's phases, so that the model finds a
+	 * state by its phase and gets its successors as phases. Call once after
+	 * opening the table.
+	 */
+	public void bind(Phases phases) {
+		for (State s : states) {
+			s.phase = phases.id(s.row.name);
+			s.succPhases = new int[s.row.succNames.length];
+			for (int i = 0; i < s.succPhases.length; i++)
+				s.succPhases[i] = phases.id(s.row.succNames[i]);
+		}
+		byPhase = new State[phases.size()];
+		for (State s : states)
+			byPhase[s.phase] = s;
+	}
+
+	/** The state of a phase after {@link #bind(Phases)}, or null if the file has none. */
+	public State stateForPhase(int phase) {
+		return phase >= 0 && phase < byPhase.length ? byPhase[phase] : null;
+	}
+
+	/**
+	 * Makes a change to this view: now, or with {@link Change#at(double)}
+	 * when {@link #advance(double)} reaches its time. Only the changed
+	 * state's row is built again; the cached file and other views are not
+	 * touched. Call it on the simulation thread, or use {@link #post(Change)}.
+	 *
+	 * @throws IllegalArgumentException if the file has no such transition,
+	 *             or the state would be left with no probability at all
+	 */
+	public synchronized void apply(Change change) {
+		check(change, false);
+		make(change);
+	}
+
+	/**
+	 * Makes a change from any thread: it is checked now, on the calling
+	 * thread, and made by the simulation thread at the next
+	 * {@link #advance(double)}, before the model's next Markov step.
+	 *
+	 * @throws IllegalArgumentException if the file has no such transition,
+	 *             or the state would be left with no probability at all
+	 */
+	public synchronized void post(Change change) {
+		check(change, true);
+		posted.add(change);
+	}
+
+	/**
+	 * Builds the changed state's row through every change waiting for it, in
+	 * the order they will be made: the posted ones, then the timed ones by
+	 * time. The change goes before the posted ones if it is made now.
+	 */
+	private void check(Change change, boolean post) {
+		State from = state(change.from);
+		indexOf(from, change);
+		Row r = from.row;
+		boolean timed = change.at > Double.NEGATIVE_INFINITY;
+		List<Change> due = new ArrayList<Change>();
+		if (!post && !timed)
+			r = changed(r, change);
+		for (Change c : posted)
+			if (c.from.equals(change.from)) {
+				if (c.at > Double.NEGATIVE_INFINITY)
+					due.add(c);
+				else
+					r = changed(r, c);
+			}
+		if (post && !timed)
+			r = changed(r, change);
+		for (Change c : pending)
+			if (c.from.equals(change.from))
+				due.add(c);
+		if (timed)
+			due.add(change);
+		Collections.sort(due, BY_TIME);
+		for (Change c : due)
+			r = changed(r, c);
+	}
+
+	private static final Comparator<Change> BY_TIME = new Comparator<Change>() {
+		public int compare(Change a, Change b) {
+			return Double.compare(a.at, b.at);
+		}
+	};
+
+	private static Row changed(Row r, Change change) {
+		int index = indexOf(r, change.to);
+		double probability = Double.isNaN(change.probability) ? r.probabilities[index] : change.probability;
+		TimeSampler time = change.time == null ? r.times[index] : change.time;
+		return r.with(index, probability, time);
+	}
+
+	// a checked change
+	private void make(Change change) {
+		if (change.at > Double.NEGATIVE_INFINITY) {
+			int i = pending.size();
+			while (i > 0 && pending.get(i - 1).at > change.at)
+				i--;
+			pending.add(i, change);
+			nextDue = pending.get(0).at;
+			return;
+		}
+		State from = state(change.from);
+		from.row = changed(from.row, change);
+	}
+
+	private static int indexOf(State from, Change change) {
+		int index = from == null ? -1 : indexOf(from.row, change.to);
+		if (index < 0)
+			throw new IllegalArgumentException("No transition from " + change.from + " to " + change.to);
+		return index;
+	}
+
+	private static int indexOf(Row r, String to) {
+		for (int i = 0; i < r.succNames.length; i++)
+			if (r.succNames[i].equals(to))
+				return i;
+		return -1;
+	}
+
+	/** Makes the changes posted or whose time has come; the models call it before a Markov step. */
+	public void advance(double time) {
+		if (time < nextDue && posted.isEmpty())
+			return;
+		synchronized (this) {
+			Change change;
+			while ((change = posted.poll()) != null)
+				make(change);
+			while (!pending.isEmpty() && pending.get(0).at <= time)
+				make(pending.remove(0).at(Double.NEGATIVE_INFINITY));
+			nextDue = pending.isEmpty() ? Double.POSITIVE_INFINITY : pending.get(0).at;
+		}
+	}
+
+	/**
+	 * A new ProbValue or TimeInfo for one transition, for sweeps that would
+	 * otherwise edit the XML and build the model again:
+	 *
+	 * <pre>
+	 * Change.probability("active", "portf_95_state", 0.5)
+	 * Change.time("active", "portFLOW4_state", TimeSampler.exponential(2.0)).at(5000.0)
+	 * </pre>
+	 *
+	 * Probabilities are ProbValues as in the file, normalized over the
+	 * state's transitions.
+	 */
+	public static final class Change {
+		final String from, to;
+		final double probability;
+		final TimeSampler time;
+		final double at;
+
+		private Change(String from, String to, double probability, TimeSampler time, double at) {
+			this.from = from;
+			this.to = to;
+			this.probability = probability;
+			this.time = time;
+			this.at = at;
+		}
+
+		public static Change probability(String from, String to, double probability) {
+			if (!(probability >= 0) || Double.isInfinite(probability))
+				throw new IllegalArgumentException("Invalid probability " + probability);
+			return new Change(from, to, probability, null, Double.NEGATIVE_INFINITY);
+		}
+
+		public static Change time(String from, String to, TimeSampler time) {
+			if (time == null)
+				throw new NullPointerException("time");
+			return new Change(from, to, Double.NaN, time, Double.NEGATIVE_INFINITY);
+		}
+
+		/** The same change, made once the node's simulation time reaches time. */
+		public Change at(double time) {
+			return new Change(from, to, probability, this.time, time);
+		}
+
+		@Override
+		public String toString() {
+			return from + " -> " + to + (Double.isNaN(probability) ? "" : " p=" + probability)
+					+ (time == null ? "" : " time") + (at > Double.NEGATIVE_INFINITY ? " at " + at : "");
+		}
+	}
+
+	/**
+	 * The tables the nodes of one run opened, for the fast path report. Every
+	 * run has one (see {@link RunContext#getTransitionTables()}).
+	 */
+	public static class Registry {
+		private final Map<String, TransitionTable> nodes = new LinkedHashMap<String, TransitionTable>();
+		private final Map<String, List<Change>> changes = new HashMap<String, List<Change>>();
+
+		/** Loads a node's table, with the run's changes for it; called when the node is initialized. */
+		public synchronized TransitionTable open(String node, String fileName) throws IOException {
+			TransitionTable table = load(fileName);
+			List<Change> list = changes.get(node);
+			if (list != null)
+				for (Change change : list)
+					table.apply(change);
+			nodes.put(node, table);
+			return table;
+		}
+
+		/**
+		 * Changes a node's transitions for this run: at the node's next step
+		 * if it is open, and again whenever it is opened (initialized) later.
+		 * Any thread may call it; the node's own thread makes the change.
+		 */
+		public synchronized void change(String node, Change change) {
+			List<Change> list = changes.get(node);
+			if (list == null)
+				changes.put(node, list = new ArrayList<Change>());
+			list.add(change);
+			TransitionTable table = nodes.get(node);
+			if (table != null)
+				table.post(change);
+		}
+
+		public synchronized TransitionTable get(String node) {
+			return nodes.get(node);
+		}
+
+		/** Prints one line per node and state that has successors, with the fast path it takes. */
+		public synchronized void report(PrintStream out) {
+			out.println(String.format("%-12s %-20s %10s  %s", "node", "state", "successors", "fast path"));
+			for (Map.Entry<String, TransitionTable> e : nodes.entrySet())
+				for (State s : e.getValue().states) {
+					if (s.isAbsorbing())
+						continue;
+					String path;
+					if (s.isSingleSuccessor() && s.hasFixedTime())
+						path = "single successor, fixed time";
+					else if (s.isSingleSuccessor())
+						path = "single successor";
+					else if (s.hasFixedTime())
+						path = "fixed time";
+					else
+						path = "-";
+					out.println(String.format("%-12s %-20s %10d  %s", e.getKey(), s.getName(), s.getSuccCount(), path));
+				}
+		}
+	}
+
+	private static class Cached {
+		final long modified;
+		final long length;
+		final Compiled compiled;
+
+		Cached(long modified, long length, Compiled compiled) {
+			this.modified = modified;
+			this.length = length;
+			this.compiled = compiled;
+		}
+	}
+
+	/** The parsed file, shared by all views and never changed. */
+	private static class Compiled {
+		final String[] names;
+		final Row[] rows;
+		final Map<String, Integer> ids;
+
+		Compiled(String[] names, Row[] rows) {
+			this.names = names;
+			this.rows = rows;
+			ids = new HashMap<String, Integer>(names.length * 2);
+			for (int i = 0; i < names.length; i++)
+				ids.put(names[i], i);
+		}
+	}
+
+	private static class Transition {
+		final int to;
+		final double prob;
+		final TimeSampler time;
+
+		Transition(int to, double prob, TimeSampler time) {
+			this.to = to;
+			this.prob = prob;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * The compiled transitions out of one state; immutable once built. A
+	 * state with successors must have some probability to leave by.
+	 */
+	static class Row {
+		final int id;
+		final String name;
+		final int[] succs;
+		final String[] succNames;
+		final double[] probabilities;
+		final double[] cumulative;
+		final TimeSampler[] times;
+		final double norm;
+		final boolean absorbing;
+		// fast path: no selection draw, and times that need no draw (NaN if they do)
+		final boolean single;
+		final double[] fixedTimes;
+		final boolean fixedTime;
+		// alias table: column i keeps succ i with probability aliasProb[i], else aliasOf[i]
+		final double[] aliasProb;
+		final int[] aliasOf;
+		final Successors successors;
+
+		static Row of(int id, String[] names, List<Transition> out) {
+			int n = out.size();
+			int[] succs = new int[n];
+			String[] succNames = new String[n];
+			double[] probabilities = new double[n];
+			TimeSampler[] times = new TimeSampler[n];
+			for (int i = 0; i < n; i++) {
+				Transition t = out.get(i);
+				succs[i] = t.to;
+				succNames[i] = names[t.to];
+				probabilities[i] = t.prob;
+				times[i] = t.time;
+			}
+			return new Row(id, names[id], succs, succNames, probabilities, times);
+		}
+
+		Row(int id, String name, int[] succs, String[] succNames, double[] probabilities, TimeSampler[] times) {
+			this.id = id;
+			this.name = name;
+			this.succs = succs;
+			this.succNames = succNames;
+			this.probabilities = probabilities;
+			this.times = times;
+			int n = succs.length;
+			cumulative = new double[n];
+			double sum = 0;
+			for (int i = 0; i < n; i++)
+				sum += probabilities[i];
+			if (n > 0 && !(sum > 0))
+				throw new IllegalArgumentException("No probability left from " + name);
+			norm = sum;
+			double acc = 0;
+			for (int i = 0; i < n; i++) {
+				acc += probabilities[i] / norm;
+				cumulative[i] = acc;
+			}
+			// rounding must not leave samples close to 1 without a successor
+			if (n > 0)
+				cumulative[n - 1] = 1.0;
+			absorbing = n == 0 || (n == 1 && succs[0] == id);
+			single = n == 1;
+			fixedTimes = new double[n];
+			boolean allFixed = n > 0;
+			for (int i = 0; i < n; i++) {
+				fixedTimes[i] = times[i] instanceof Constant ? ((Constant) times[i]).value : Double.NaN;
+				allFixed &= times[i] instanceof Constant;
+			}
+			fixedTime = allFixed;
+			aliasProb = new double[n];
+			aliasOf = new int[n];
+			buildAlias();
+			successors = new Successors(this);
+		}
+
+		/**
+		 * A copy with one transition changed; only this row's cumulative,
+		 * fast path and alias data are built again.
+		 */
+		Row with(int index, double probability, TimeSampler time) {
+			double[] p = probabilities.clone();
+			TimeSampler[] t = times.clone();
+			p[index] = probability;
+			t[index] = time;
+			return new Row(id, name, succs, succNames, p, t);
+		}
+
+		// Vose's method: pair every column below the average with one above it
+		private void buildAlias() {
+			int n = probabilities.length;
+			double[] scaled = new double[n];
+			int[] small = new int[n], large = new int[n];
+			int ns = 0, nl = 0;
+			for (int i = 0; i < n; i++) {
+				scaled[i] = probabilities[i] / norm * n;
+				if (scaled[i] < 1.0)
+					small[ns++] = i;
+				else
+					large[nl++] = i;
+			}
+			while (ns > 0 && nl > 0) {
+				int s = small[--ns], l = large[--nl];
+				aliasProb[s] = scaled[s];
+				aliasOf[s] = l;
+				scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+				if (scaled[l] < 1.0)
+					small[ns++] = l;
+				else
+					large[nl++] = l;
+			}
+			// what is left is 1 up to rounding
+			while (nl > 0) {
+				int l = large[--nl];
+				aliasProb[l] = 1.0;
+				aliasOf[l] = l;
+			}
+			while (ns > 0) {
+				int s = small[--ns];
+				aliasProb[s] = 1.0;
+				aliasOf[s] = s;
+			}
+		}
+	}
+
+	/** One state of a view, with its outgoing transitions in file order. */
+	public static class State {
+		private Row row;
+		private boolean alias;
+		private int phase = Phases.NONE;
+		private int[] succPhases;
+
+		State(Row row) {
+			this.row = row;
+		}
+
+		public int getId() {
+			return row.id;
+		}
+
+		public String getName() {
+			return row.name;
+		}
+
+		public int getSuccCount() {
+			return row.succs.length;
+		}
+
+		public int getSucc(int index) {
+			return row.succs[index];
+		}
+
+		public String getSuccName(int index) {
+			return row.succNames[index];
+		}
+
+		/** The model's phase for this state, once the table is bound. */
+		public int getPhase() {
+			return phase;
+		}
+
+		/** The model's phase for a successor, once the table is bound. */
+		public int getSuccPhase(int index) {
+			return succPhases[index];
+		}
+
+		/** The ProbValue of a transition as written in the file, not normalized. */
+		public double getProbability(int index) {
+			return row.probabilities[index];
+		}
+
+		/** The sum of the ProbValues, ctm.normalFactor(state). */
+		public double getNorm() {
+			return row.norm;
+		}
+
+		/** True if the state has no successor other than itself; the models stay put. */
+		public boolean isAbsorbing() {
+			return row.absorbing;
+		}
+
+		/** True if there is one successor, selected without a draw. */
+		public boolean isSingleSuccessor() {
+			return row.single;
+		}
+
+		/** True if every transition out of the state takes a fixed time, drawn without randomness. */
+		public boolean hasFixedTime() {
+			return row.fixedTime;
+		}
+
+		/** The index of the next successor. Draws a sample only if there is a choice. */
+		public int next(RandomStream rng) {
+			if (row.single)
+				return 0;
+			return select(rng.nextDouble());
+		}
+
+		/**
+		 * The index of the successor a uniform sample in [0, 1) selects, with
+		 * the table's {@link Selection}.
+		 */
+		public int select(double sample) {
+			Row r = row;
+			if (alias) {
+				// the integer part picks the column, the fraction decides within it
+				double x = sample * r.aliasProb.length;
+				int column = (int) x;
+				if (column >= r.aliasProb.length)
+					column = r.aliasProb.length - 1;
+				return x - column < r.aliasProb[column] ? column : r.aliasOf[column];
+			}
+			return selectCumulative(r.cumulative, sample);
+		}
+
+		/** Linear for the usual two or three successors, binary search beyond. */
+		static int selectCumulative(double[] c, double sample) {
+			int n = c.length;
+			if (n <= 8) {
+				for (int i = 0; i < n - 1; i++)
+					if (sample <= c[i])
+						return i;
+				return n - 1;
+			}
+			int lo = 0, hi = n - 1;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (sample <= c[mid])
+					hi = mid;
+				else
+					lo = mid + 1;
+			}
+			return lo;
+		}
+
+		/** The time until the transition to successor index fires. */
+		public double sampleTime(int index, RandomStream rng) {
+			Row r = row;
+			double fixed = r.fixedTimes[index];
+			if (fixed == fixed)
+				return fixed;
+			return r.times[index].next(rng);
+		}
+
+		public TimeSampler getTimeSampler(int index) {
+			return row.times[index];
+		}
+
+		/** The state's successor descriptor; a {@link Change} to the state replaces it. */
+		public Successors getSuccessors() {
+			return row.successors;
+		}
+	}
+
+	/**
+	 * The successors of a state, computed once with its row: their ids in
+	 * file order, their probabilities normalized over the state, and
+	 * whether the state has a transition to itself. It never changes, so a
+	 * model may keep it.
+	 */
+	public static final class Successors {
+		private final int[] ids;
+		private final double[] probabilities;
+		private final double[] exits;
+		private final boolean selfLoop;
+
+		Successors(Row row) {
+			int n = row.succs.length;
+			ids = row.succs;
+			probabilities = new double[n];
+			exits = new double[n];
+			boolean self = false;
+			for (int i = 0; i < n; i++) {
+				probabilities[i] = row.probabilities[i] / row.norm;
+				if (row.succs[i] == row.id)
+					self = true;
+				else
+					exits[i] = row.probabilities[i];
+			}
+			selfLoop = self;
+		}
+
+		public int size() {
+			return ids.length;
+		}
+
+		public int getId(int index) {
+			return ids[index];
+		}
+
+		/** The normalized probability of a successor. */
+		public double getProbability(int index) {
+			return probabilities[index];
+		}
+
+		public boolean hasSelfLoop() {
+			return selfLoop;
+		}
+
+		/**
+		 * The ProbValues of the transitions as in the file, with 0 for the
+		 * one back to the state itself, as the models' fillProbabilities
+		 * returns them. The array is shared; callers must not change it.
+		 */
+		public double[] getExitProbabilities() {
+			return exits;
+		}
+	}
+
+	/** A TimeInfo of the XML resolved to its distribution. */
+	public abstract static class TimeSampler {
+
+		static final TimeSampler ZERO = new Constant(0.0);
+
+		public abstract double next(RandomStream rand);
+
+		static TimeSampler of(Element info) {
+			String type = text(info, "Type");
+			double lower = number(info, "Lower", 0.0);
+			double upper = number(info, "Upper", 1.0);
+			double mean = number(info, "Mean", 1.0);
+			double sigma = number(info, "Sigma", 1.0);
+			if (type.equalsIgnoreCase("Exponential"))
+				return exponential(mean);
+			if (type.equalsIgnoreCase("Normal"))
+				return normal(mean, sigma);
+			if (!type.isEmpty() && !type.equalsIgnoreCase("Uniform"))
+				throw new IllegalArgumentException("Unsupported TimeInfo type: " + type);
+			return uniform(lower, upper);
+		}
+
+		/** Uniform from lower to upper, or always lower if upper is not above it. */
+		public static TimeSampler uniform(double lower, double upper) {
+			return upper <= lower ? new Constant(lower) : new Uniform(lower, upper);
+		}
+
+		/** Exponential with this mean, or always 0 if the mean is not positive. */
+		public static TimeSampler exponential(double mean) {
+			return mean > 0 ? new Exponential(mean) : ZERO;
+		}
+
+		/** Normal, cut at 0; without a positive sigma always the mean (at least 0). */
+		public static TimeSampler normal(double mean, double sigma) {
+			return sigma > 0 ? new Normal(mean, sigma) : new Constant(Math.max(0.0, mean));
+		}
+
+		private static double number(Element info, String tag, double fallback) {
+			String s = text(info, tag);
+			return s.isEmpty() ? fallback : Double.parseDouble(s);
+		}
+	}
+
+	static class Constant extends TimeSampler {
+		final double value;
+
+		Constant(double value) {
+			this.value = value;
+		}
+
+		@Override
+		public double next(RandomStream rand) {
+			return value;
+		}
+	}
+
+	static class Uniform extends TimeSampler {
+		final double lower, width;
+
+		Uniform(double lower, double upper) {
+			this.lower = lower;
+			this.width = upper - lower;
+		}
+
+		@Override
+		public double next(RandomStream rand) {
+			return lower + width * rand.nextDouble();
+		}
+	}
+
+	static class Exponential extends TimeSampler {
+		final double mean;
+
+		Exponential(double mean) {
+			this.mean = mean;
+		}
+
+		@Override
+		public double next(RandomStream rand) {
+			return mean * rand.nextExponential();
+		}
+	}
+
+	static class Normal extends TimeSampler {
+		final double mean, sigma;
+
+		Normal(double mean, double sigma) {
+			this.mean = mean;
+			this.sigma = sigma;
+		}
+
+		@Override
+		public double next(RandomStream rand) {
+			return Math.max(0.0, mean + sigma * rand.nextGaussian());
+		}
+	}
+}
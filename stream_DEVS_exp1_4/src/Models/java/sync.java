@@ -8,13 +8,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 import com.ms4systems.devs.core.message.Message;
 import com.ms4systems.devs.core.message.MessageBag;
@@ -31,21 +26,30 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 	protected List<String> jobs;
 	protected double processing_time;
 	protected List<String> out_ports;
-	protected Map<String,Queue> in_ports;
-	protected Map<String,LinkedList> in_ports_2;
+	protected Map<String,Integer> in_port_ids;
+	protected Port[] in_ports_by_id;
+	protected JoinIndex queues;
 	protected String firstPortName;
 	protected int job_received, job_created;
 	protected String job_created_str;
 	
+	// Phases, numbered in the order of PHASES
+	private static final int PASSIVE = 0;
+	private static final int COMBINING = 1;
+	private static final int WAITING = 2;
+	static final Phases PHASES = new Phases("passive", "combining", "waiting");
+
 	String phase = "passive";
+	int phaseId = PASSIVE;
 	Double sigma = 1.0;
 	protected double currentTime;
 	protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+	protected RunContext runContext = RunContext.getDefault();
 	protected double total_waiting_time, start_waiting, total_job_waiting_time, arrival_rate, throughput;
-	FileWriter analyticsFile;
-	public String folder = System.getProperty("user.dir") + File.separator;
-	public String foldertxt = folder + "src\\Models\\csv\\"+ File.separator;
-	public String resultsFileName = foldertxt+"sync.csv";
+	protected MetricsRegistry.NodeMetrics metrics;
+	protected LogHistogram waitingTimes;
+	TraceChannel trace;
+	public String resultsFileName;
 	// Input ports
 
 	public final Port<Serializable> inFLOW6 = 
@@ -72,9 +76,10 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 		super(name);
 		addInputPort("in");
 		addOutputPort("out");
-		in_ports = new HashMap<String,Queue>();
+		in_port_ids = new HashMap<String,Integer>();
 		out_ports = new ArrayList<String>();
-		in_ports.put("in", new LinkedList());
+		in_port_ids.put("in", 0);
+		queues = new JoinIndex(1);
 		out_ports.add("out");
 		processing_time = Processing_time;
 		//addTestInput("in",new String("job"));
@@ -87,14 +92,15 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 			List<String> in_ports, List<String> out_ports){
 		super(name);
 
-		this.in_ports = new HashMap<String,Queue>();
-		this.in_ports_2 = new HashMap<String,LinkedList>();
+		// ports are numbered in the order given, which is the order of the queues
+		this.in_port_ids = new HashMap<String,Integer>();
 
 		for(String port_name: in_ports){
 			//addInputPort(port_name, Serializable.class);
-			this.in_ports.put(port_name, new LinkedList<String>());
-			this.in_ports_2.put(port_name, new LinkedList<String>());
+			if(!this.in_port_ids.containsKey(port_name))
+				this.in_port_ids.put(port_name, this.in_port_ids.size());
 		}
+		this.queues = new JoinIndex(this.in_port_ids.size());
 
 		if(in_ports.size()>0)
 			firstPortName = in_ports.get(0);
@@ -116,8 +122,13 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 		super(name, simulator);
 	}
 
+	public void setRunContext(RunContext runContext) {
+		this.runContext = runContext;
+	}
+
 	public void initialize(){
 		phase = "passive";
+		phaseId = PASSIVE;
 		sigma = Double.POSITIVE_INFINITY;
 		job = new String("job");
 		job_created = job_received = 0;
@@ -126,14 +137,41 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 		total_waiting_time = 0.0;
 		total_job_waiting_time = 0.0;
 		arrival_rate = throughput = 0.0;
-		try {
-			Files.createDirectories(Paths.get(foldertxt+""));
-			analyticsFile = new FileWriter(resultsFileName);
-			analyticsFile.write("Simulation time, Total waiting time, Total job waiting, Average queue size, Job arrival rate, Throughput, Job from queue, Job has waited for\n");
-			analyticsFile.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		// a new run starts at time 0 with empty lanes and no occupancy history
+		currentTime = 0.0;
+		if(queues != null)
+			queues = new JoinIndex(queues.ports());
+		metrics = runContext.getMetrics().register(getClass().getSimpleName());
+		metrics.counter("job_received", () -> job_received);
+		metrics.counter("job_created", () -> job_created);
+		metrics.gauge("total_waiting_time", () -> total_waiting_time);
+		metrics.gauge("total_job_waiting_time", () -> total_job_waiting_time);
+		metrics.gauge("average_queue_size", () -> averageQueueSize());
+		metrics.gauge("arrival_rate", () -> arrival_rate);
+		metrics.gauge("throughput", () -> throughput);
+		waitingTimes = metrics.histogram("waiting_time");
+		if(in_port_ids != null) {
+			in_ports_by_id = new Port[queues.ports()];
+			for(Port in_port: this.getInputPorts()) {
+				Integer port = in_port_ids.get(in_port.getName());
+				if(port != null)
+					in_ports_by_id[port] = in_port;
+			}
+			queues.setBounds(runContext.getJoinBounds(getClass().getSimpleName()), in_port_ids);
+			queues.recordDroppedAges(metrics.histogram("dropped_age"));
+			metrics.counter("evicted", () -> queues.getEvicted());
+			metrics.counter("rejected", () -> queues.getRejected());
+			metrics.counter("expired", () -> queues.getExpired());
+			metrics.gauge("time_average_queue_size", now -> queues.getTimeAverageSize(now)/queues.ports());
+			for(Map.Entry<String,Integer> entry: in_port_ids.entrySet()) {
+				int port = entry.getValue();
+				metrics.counter("max_queue_size_" + entry.getKey(), () -> queues.getMaxSize(port));
+			}
 		}
+		resultsFileName = runContext.resultsFile("sync.csv");
+		trace = runContext.getTraces().open(resultsFileName,
+				"Simulation time, Total waiting time, Total job waiting, Average queue size, Job arrival rate, Throughput, Job from queue, Job has waited for",
+				"ddddddid");
 		super.initialize();
 	}
 
@@ -141,41 +179,41 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 	public void externalTransition(double e, MessageBag x) {
 		currentTime += e;
 		sigma -= e;
-
-		for (int i=0; i< x.size();i++){
-			//for(Map.Entry<String,Queue> entry: in_ports.entrySet())
-			for(Port in_port: this.getInputPorts())
-				if (x.hasMessages(in_port)){
-
-					ArrayList<Message<Serializable>> messageList = in_port.getMessages(x);
-
-					for (int k = 0; k < messageList.size(); k++) {
-						job = (String) messageList.get(k).getData(); //this.getName();//
-						//holdIn("active", 0.);
-						in_ports.get(in_port.getName()).add(""+currentTime);//in_port.getMessages(x).get(0));
-						in_ports_2.get(in_port.getName()).add(job);
-						job_received++;
-						if(currentTime>0)
-							arrival_rate = job_received/currentTime;
-					}
-					if(in_ports.size()==1)
-						start_waiting = currentTime;
-					//in_ports.get(in_port.getName()).add(in_port.getMessages(x));//in_port.getMessages(x).get(0));
-					//in_ports_2.get(in_port.getName()).add(in_port.getMessages(x));
+		queues.advance(currentTime);
+		queues.expire(currentTime);
+
+		// one pass over the bag, port by port
+		for(int port = 0; port < in_ports_by_id.length; port++)
+			if (in_ports_by_id[port] != null && x.hasMessages(in_ports_by_id[port])){
+
+				ArrayList<Message<Serializable>> messageList = in_ports_by_id[port].getMessages(x);
+
+				for (int k = 0; k < messageList.size(); k++) {
+					job = (String) messageList.get(k).getData(); //this.getName();//
+					//holdIn("active", 0.);
+					queues.add(port, job, currentTime);//in_port.getMessages(x).get(0));
+					job_received++;
+					if(currentTime>0)
+						arrival_rate = job_received/currentTime;
 				}
-			if(allQueuesAreNonEmpty() && inputIsInAllQueues() && !phaseIs("combining")){
-				//prepareOutput();
-				total_waiting_time += currentTime - start_waiting;
-				appendStrToFile(resultsFileName, ""+currentTime+","+total_waiting_time+","+total_job_waiting_time+","+averageQueueSize()+","+arrival_rate+","+throughput+",,\n");
-				//System.out.println("Current total waiting time in node " +this.getName()+ " : " + total_waiting_time);
-				job_created++;
-				if(currentTime!=0)
-					throughput = job_created/currentTime;
-				holdIn("combining",processing_time);
-			} else if(phaseIs("passive")){
-				start_waiting = currentTime;
-				holdIn("waiting",Double.POSITIVE_INFINITY);
+				if(queues.ports()==1)
+					start_waiting = currentTime;
 			}
+		// the join is evaluated once, after the whole bag is queued
+		if(allQueuesAreNonEmpty() && inputIsInAllQueues() && !phaseIs(COMBINING)){
+			//prepareOutput();
+			total_waiting_time += currentTime - start_waiting;
+			trace.row(currentTime).col(total_waiting_time).col(total_job_waiting_time).col(averageQueueSize())
+					.col(arrival_rate).col(throughput).missing().missing().end();
+			//System.out.println("Current total waiting time in node " +this.getName()+ " : " + total_waiting_time);
+			job_created++;
+			if(currentTime!=0)
+				throughput = job_created/currentTime;
+			queues.holdHeads();
+			holdIn(COMBINING, processing_time);
+		} else if(phaseIs(PASSIVE)){
+			start_waiting = currentTime;
+			holdIn(WAITING, Double.POSITIVE_INFINITY);
 		}
 	}
 
@@ -184,114 +222,45 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 	{
 		currentTime += sigma;
 
+		queues.advance(currentTime);
 		removeElementFromAllQueues();
+		queues.expire(currentTime);
 		if(allQueuesAreNonEmpty()) {
 			total_waiting_time += currentTime - start_waiting;
 			//System.out.println("Current total waiting time in node " +this.getName()+ " : " + total_waiting_time);
-			appendStrToFile(resultsFileName, ""+currentTime+","+total_waiting_time+","+total_job_waiting_time+","+averageQueueSize()+","+arrival_rate+","+throughput+",,\n");
+			trace.row(currentTime).col(total_waiting_time).col(total_job_waiting_time).col(averageQueueSize())
+					.col(arrival_rate).col(throughput).missing().missing().end();
 			job_created++;
-			holdIn("combining",processing_time);
+			queues.holdHeads();
+			holdIn(COMBINING, processing_time);
 		}
 		else if(allQueuesAreEmpty())
-			holdIn("passive",Double.POSITIVE_INFINITY);
+			holdIn(PASSIVE, Double.POSITIVE_INFINITY);
 		else {
-			holdIn("waiting",Double.POSITIVE_INFINITY);
+			holdIn(WAITING, Double.POSITIVE_INFINITY);
 			start_waiting = currentTime;
 		}
 	}
 
 	private boolean allQueuesAreNonEmpty() {
-		for(Map.Entry<String,Queue> entry: in_ports.entrySet())
-			if (entry.getValue().isEmpty())
-				return false;
-
-		return true;
+		return queues.allNonEmpty();
 	}
 
 	private boolean inputIsInAllQueues() {
-		//check all inputs of first queue
-		if(in_ports_2.size()<1)
-			return true;
-
-		//LinkedList<String> firstQueue = new LinkedList<String>();
-		//firstQueue = in_ports_2.get(firstPortName);
-		//System.out.println("PEEK QUEUE="+ firstQueue.get(0).toString());
-
-		for(Map.Entry<String,LinkedList> entry: in_ports_2.entrySet())
-			if (!entry.getValue().isEmpty()) {
-				boolean[] found = new boolean[in_ports_2.size()];
-				for(int k=0; k < found.length; k++)
-					found[k] = false;
-
-				for(int i=0; i < entry.getValue().size(); i++) {
-					//System.out.println("PEEK: "+entry.getValue().get(i));
-					job = entry.getValue().get(i).toString();
-					int counter = 0;
-					for(Map.Entry<String,LinkedList> entry2: in_ports_2.entrySet())
-					{
-						if (!entry2.getValue().isEmpty()) {
-							for(int j=0; j < entry2.getValue().size(); j++) {
-								String str = entry2.getValue().get(j).toString();
-								//if(job.equals(str)) {
-								found[counter] = true;
-								//}
-							}
-						}
-						else
-							return false;
-						counter++;
-					}
-					boolean check = true;
-					for(int k=0; k < found.length && check; k++)
-						if(!found[k])
-							check = false;
-					if(check)
-						return true;
-				}
-				return false;
-			} else
-				return false;
-
-		return true;
+		// the job comparison is commented out, so any job on every queue matches
+		return queues.allNonEmpty();
 	}
 
 	private boolean inputIsInAllQueuesExactMatch() {
-		//check all inputs of first queue
-		if(in_ports_2.size()<1)
+		if(queues.ports()<1)
 			return true;
 
-		List<String> entry = in_ports_2.get(firstPortName);
-
-		if (entry!=null && !entry.isEmpty()) {
-			boolean[] found = new boolean[in_ports_2.size()];
-			for(int k=0; k < found.length; k++)
-				found[k] = false;
-			for(int i=0; i < entry.size(); i++) {
-				job = entry.get(i).toString();
-				int counter = 0;
-				for(Map.Entry<String,LinkedList> entry2: in_ports_2.entrySet())
-				{
-					if (!entry2.getValue().isEmpty()) {
-						if(entry2.getValue().contains(job))
-							found[counter] = true;
-					}
-					else
-						return false;
-					counter++;
-				}
-				boolean check = true;
-				for(int k=0; k < found.length && check; k++)
-					if(!found[k])
-						check = false;
-				if(check) {
-					job_created_str = job;
-					return true;
-				}
-			}
-			return false;
-		} else
+		String match = queues.match();
+		if(match == null)
 			return false;
-
+		job = match;
+		job_created_str = match;
+		return true;
 	}
 
 	@Override
@@ -308,76 +277,58 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 
 
 	private boolean allQueuesAreEmpty() {
-		for(Map.Entry<String,Queue> entry: in_ports.entrySet())
-			if (!entry.getValue().isEmpty())
-				return false;
-		return true;
+		return queues.allEmpty();
 	}
 
 	private void prepareOutput() {
 		jobs = new ArrayList<String>();
-		for(Map.Entry<String,Queue> entry: in_ports.entrySet())
-			jobs.add(entry.getValue().peek().toString());
+		for(int port = 0; port < queues.ports(); port++)
+			jobs.add(""+queues.peek(port));
 	}
 
 	private void removeElementFromAllQueues() {
 		int count = 1;
-		for(Map.Entry<String,Queue> entry: in_ports.entrySet()) {
-			String t = (String) entry.getValue().remove();
-			double wt = Double.parseDouble(t);
+		for(int port = 0; port < queues.ports(); port++) {
+			double wt = queues.takeHeld(port);
+			if(Double.isNaN(wt)) {
+				// the queue lost the job it was combining to an eviction
+				count++;
+				continue;
+			}
 			//System.out.println("Job from queue " + count +" in node "+ this.getName() +" has waited : "+(currentTime-wt));
-			appendStrToFile(resultsFileName, ""+currentTime+","+total_waiting_time+","+total_job_waiting_time+","+averageQueueSize()+","+arrival_rate+","+throughput+","+(count++)+","+(currentTime-wt)+"\n");
+			trace.row(currentTime).col(total_waiting_time).col(total_job_waiting_time).col(averageQueueSize())
+					.col(arrival_rate).col(throughput).col(count++).col(currentTime-wt).end();
 			total_job_waiting_time += currentTime-wt;
+			waitingTimes.record(currentTime-wt);
 		}
-		for(Map.Entry<String,LinkedList> entry: in_ports_2.entrySet())
-			entry.getValue().remove();
 	}
 
 	private void removeElementFromAllQueuesExactMatch() {
 		int count = 1;
-		String to_be_removed = job_created_str;
-		int atIndex;
-
-		for(Map.Entry<String,LinkedList> entry: in_ports_2.entrySet()) {
-			atIndex = entry.getValue().indexOf(to_be_removed);
-			entry.getValue().remove(to_be_removed);
-			double wt = removeAt(in_ports.get(entry.getKey()),atIndex);
-			appendStrToFile(resultsFileName, ""+currentTime+","+total_waiting_time+","+total_job_waiting_time+","+averageQueueSize()+","+arrival_rate+","+throughput+","+(count++)+","+(currentTime-wt)+"\n");
-			total_job_waiting_time += currentTime-wt;
-		}
-
-	}
-
-	private double removeAt(Queue<String> queue, int index) {
-		if (queue == null)
-			return 0.0;
-
-		int size = queue.size();
-		if (index < 0 || size < index + 1)
-			return 0.0;
-
-		String element = null;
-		for (int i = 0; i < size; i++) {
-			if (i == index) {
-				element = queue.remove();
-			} else {
-				queue.add(queue.remove());
+		for(int port = 0; port < queues.ports(); port++) {
+			double wt = queues.takeHeld(port);
+			if(Double.isNaN(wt)) {
+				// the job was evicted from this queue while combining
+				count++;
+				continue;
 			}
+			trace.row(currentTime).col(total_waiting_time).col(total_job_waiting_time).col(averageQueueSize())
+					.col(arrival_rate).col(throughput).col(count++).col(currentTime-wt).end();
+			total_job_waiting_time += currentTime-wt;
+			waitingTimes.record(currentTime-wt);
 		}
 
-		return Double.parseDouble(element);
 	}
 
 	private void mergeFirstElementFromAllQueues() {
-		for(Map.Entry<String,Queue> entry: in_ports.entrySet()) {
-			String t = (String) entry.getValue().remove();
-			double wt = Double.parseDouble(t);
+		jobs.clear();
+		for(int port = 0; port < queues.ports(); port++) {
+			jobs.add(queues.peekJob(port));
+			double wt = queues.poll(port);
 			//System.out.println("Job from queue " + count +" in node "+ this.getName() +" has waited : "+(currentTime-wt));
 			total_job_waiting_time += currentTime-wt;
+			waitingTimes.record(currentTime-wt);
 		}
-		jobs.clear();
-		for(Map.Entry<String,LinkedList> entry: in_ports_2.entrySet())
-			jobs.add((String) entry.getValue().remove());
 		job_created_str = putInOneLine(jobs);
 	}
 
@@ -404,18 +355,14 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 	}
 
 	private double averageQueueSize() {
-		int sum = 0;
-		for(Map.Entry<String,Queue> entry: in_ports.entrySet()){
-			sum += entry.getValue().size();
-		}
-		return ((double) sum)/in_ports.size();
+		return ((double) queues.size())/queues.ports();
 	}
 
 	@Override
 	public MessageBag getOutput()
 	{
 		MessageBag m = new MessageBagImpl();
-		if (phaseIs("combining"))
+		if (phaseIs(COMBINING))
 			for(Port entry : this.getOutputPorts()) {
 				//for(String j: jobs)
 				//m.add(entry,j);
@@ -425,10 +372,14 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 	}
 
 	protected void holdIn(String phase, Double sigma) {
-		this.phase = phase;
+		holdIn(PHASES.id(phase), sigma);
+	}
+
+	protected void holdIn(int phase, Double sigma) {
+		this.phaseId = phase;
+		this.phase = PHASES.name(phase);
 		this.sigma = sigma;
-		getSimulator().modelMessage(
-				"Holding in phase " + phase + " for time " + sigma);
+		ModelLog.holding(getSimulator(), this.phase, sigma);
 	}
 
 	@Override
@@ -448,17 +399,12 @@ public class sync extends AtomicModelImpl implements PhaseBased{
 		return this.phase.equals(arg0);
 	}
 
+	public boolean phaseIs(int phase) {
+		return phaseId == phase;
+	}
+
 	public void appendStrToFile(String fileName, String str) {
-		try {
-			// Open given file in append mode
-			BufferedWriter out = new BufferedWriter(
-					new FileWriter(fileName, true));
-			out.write(str);
-			out.close();
-		}
-		catch (IOException e) {
-			System.out.println("exception occurred" + e);
-		}
+		AnalyticsSink.shared().append(fileName, str);
 	}
 }
 
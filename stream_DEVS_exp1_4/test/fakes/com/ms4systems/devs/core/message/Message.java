@@ -0,0 +1,9 @@
+package com.ms4systems.devs.core.message;
+
+import java.io.Serializable;
+
+/** Fake of the MS4Me message, for the tests only. */
+public interface Message<T extends Serializable> {
+
+	T getData();
+}
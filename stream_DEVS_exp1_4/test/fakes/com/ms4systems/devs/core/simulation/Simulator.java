@@ -0,0 +1,7 @@
+package com.ms4systems.devs.core.simulation;
+
+/** Fake of the MS4Me simulator, for the tests only. */
+public interface Simulator {
+
+	void modelMessage(String message);
+}
@@ -0,0 +1,5 @@
+package com.ms4systems.devs.helpers.impl;
+
+/** Fake of the MS4Me simulation options, for the tests only. */
+public class SimulationOptionsImpl {
+}
@@ -0,0 +1,18 @@
+#!/bin/sh
+# Runs the tests of this project without MS4Me. The models are compiled
+# against test/fakes, which holds just the part of the MS4Me API the tests
+# reach, so only a JDK 8 or later is needed:
+#
+#   sh test/run-tests.sh [Models.java.SomeTest ...]
+#
+# Every test is a class with a main method that throws on a failure.
+set -e
+cd "$(dirname "$0")/.."
+out=$(mktemp -d)
+trap 'rm -rf "$out"' EXIT
+javac -nowarn -encoding UTF-8 -d "$out" -sourcepath "src:test/fakes:test/src" $(find test/src -name '*Test.java')
+tests=${*:-$(cd test/src && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||; s|/|.|g' | sort)}
+for test in $tests; do
+	echo "$test"
+	java -cp "$out" "$test"
+done
@@ -0,0 +1,213 @@
+package Models.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.ms4systems.devs.core.message.Message;
+import com.ms4systems.devs.core.message.MessageBag;
+import com.ms4systems.devs.core.message.Port;
+import com.ms4systems.devs.core.message.impl.MessageBagImpl;
+import com.ms4systems.devs.core.model.impl.AtomicModelImpl;
+import com.ms4systems.devs.extensions.PhaseBased;
+
+/**
+ * sync and BEHAVIOR1 read a bag in one pass over their ports. Fed
+ * single-message bags they must behave exactly like the externalTransition
+ * they had before, which scanned the ports once per message of the bag:
+ * the same queues, phases, time advances and outputs after every event,
+ * and the same sync.csv.
+ */
+public class BagsTest {
+
+	static final int EVENTS = 20000;
+
+	public static void main(String[] args) throws IOException {
+		File dir = Files.createTempDirectory("bags-test").toFile();
+		RunContext legacyContext = new RunContext(new File(dir, "legacy"), 1);
+		RunContext context = new RunContext(new File(dir, "current"), 1);
+		ModelLog.setEnabled(false);
+
+		// the ports ACTIVITY1 wires
+		List<String> ins = Arrays.asList("inFLOW6", "inFLOW7", "inFLOW15", "inFLOW17");
+		List<String> outs = Arrays.asList("outFLOW8", "outFLOW18");
+		LegacySync legacySync = new LegacySync("sync", 1.0, ins, outs);
+		sync currentSync = new sync("sync", 1.0, ins, outs);
+		legacySync.setRunContext(legacyContext);
+		currentSync.setRunContext(context);
+		drive("sync", legacySync, currentSync);
+
+		ins = Arrays.asList("inFLOW11");
+		outs = Arrays.asList("outFLOW12", "outFLOW13");
+		LegacyBEHAVIOR1 legacyBehavior = new LegacyBEHAVIOR1("BEHAVIOR1", 1.0, ins, outs);
+		BEHAVIOR1 currentBehavior = new BEHAVIOR1("BEHAVIOR1", 1.0, ins, outs);
+		legacyBehavior.setRunContext(legacyContext);
+		currentBehavior.setRunContext(context);
+		drive("BEHAVIOR1", legacyBehavior, currentBehavior);
+
+		legacyContext.close();
+		context.close();
+		byte[] legacyTrace = Files.readAllBytes(new File(legacySync.resultsFileName).toPath());
+		byte[] trace = Files.readAllBytes(new File(currentSync.resultsFileName).toPath());
+		Check.that(trace.length > 0, "sync wrote no trace rows");
+		Check.that(Arrays.equals(legacyTrace, trace), "sync.csv differs between the legacy and the current sync");
+		delete(dir);
+	}
+
+	// a waiting model gets a job on a random port, a busy one a job or its output, half and half
+	static void drive(String name, AtomicModelImpl legacy, AtomicModelImpl current) {
+		legacy.initialize();
+		current.initialize();
+		JoinIndex legacyQueues = queues(legacy);
+		JoinIndex queues = queues(current);
+		List<Port> legacyIns = new ArrayList<Port>(legacy.getInputPorts());
+		List<Port> ins = new ArrayList<Port>(current.getInputPorts());
+		Random random = new Random(1);
+		for (int i = 0; i < EVENTS; i++) {
+			double ta = current.getTimeAdvance();
+			if (ta == Double.POSITIVE_INFINITY || random.nextBoolean()) {
+				int port = random.nextInt(ins.size());
+				String job = String.valueOf(random.nextInt(30));
+				double e = random.nextInt(4) == 0 ? 0.0 : Math.min(ta, random.nextDouble());
+				MessageBag legacyBag = new MessageBagImpl();
+				legacyBag.add(legacyIns.get(port), job);
+				legacy.externalTransition(e, legacyBag);
+				MessageBag bag = new MessageBagImpl();
+				bag.add(ins.get(port), job);
+				current.externalTransition(e, bag);
+			} else {
+				Check.equal(outputs(legacy), outputs(current), name + ": output of event " + i);
+				legacy.internalTransition();
+				current.internalTransition();
+			}
+			Check.equal(legacyQueues.toString(), queues.toString(), name + ": queues after event " + i);
+			Check.equal(((PhaseBased) legacy).getPhase() + " " + legacy.getTimeAdvance(),
+					((PhaseBased) current).getPhase() + " " + current.getTimeAdvance(),
+					name + ": phase after event " + i);
+		}
+	}
+
+	// initialize() gives a model new queues
+	static JoinIndex queues(AtomicModelImpl model) {
+		return model instanceof sync ? ((sync) model).queues : ((BEHAVIOR1) model).queues;
+	}
+
+	static String outputs(AtomicModelImpl model) {
+		MessageBag bag = model.getOutput();
+		StringBuilder sb = new StringBuilder();
+		for (Port port : model.getOutputPorts())
+			for (Object message : port.getMessages(bag))
+				sb.append(port.getName()).append('=').append(((Message<?>) message).getData()).append(' ');
+		return sb.toString();
+	}
+
+	static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for (File c : children)
+				delete(c);
+		f.delete();
+	}
+
+	/** sync as it read a bag before the one-pass externalTransition: the port scan once per message. */
+	static class LegacySync extends sync {
+		LegacySync(String name, double processing_time, List<String> in_ports, List<String> out_ports) {
+			super(name, processing_time, in_ports, out_ports);
+		}
+
+		@Override
+		public void externalTransition(double e, MessageBag x) {
+			currentTime += e;
+			sigma -= e;
+			queues.advance(currentTime);
+			queues.expire(currentTime);
+
+			for (int i = 0; i < x.size(); i++) {
+				for (Port in_port : this.getInputPorts())
+					if (x.hasMessages(in_port)) {
+						ArrayList<Message<Serializable>> messageList = in_port.getMessages(x);
+						int port = in_port_ids.get(in_port.getName());
+						for (int k = 0; k < messageList.size(); k++) {
+							job = (String) messageList.get(k).getData();
+							queues.add(port, job, currentTime);
+							job_received++;
+							if (currentTime > 0)
+								arrival_rate = job_received / currentTime;
+						}
+						if (queues.ports() == 1)
+							start_waiting = currentTime;
+					}
+				if (queues.allNonEmpty() && !phaseIs("combining")) {
+					total_waiting_time += currentTime - start_waiting;
+					trace.row(currentTime).col(total_waiting_time).col(total_job_waiting_time)
+							.col(((double) queues.size()) / queues.ports()).col(arrival_rate).col(throughput)
+							.missing().missing().end();
+					job_created++;
+					if (currentTime != 0)
+						throughput = job_created / currentTime;
+					queues.holdHeads();
+					holdIn("combining", processing_time);
+				} else if (phaseIs("passive")) {
+					start_waiting = currentTime;
+					holdIn("waiting", Double.POSITIVE_INFINITY);
+				}
+			}
+		}
+	}
+
+	/** BEHAVIOR1 as it read a bag before the one-pass externalTransition. */
+	static class LegacyBEHAVIOR1 extends BEHAVIOR1 {
+		LegacyBEHAVIOR1(String name, double processing_time, List<String> in_ports, List<String> out_ports) {
+			super(name, processing_time, in_ports, out_ports);
+		}
+
+		@Override
+		public void externalTransition(double e, MessageBag x) {
+			currentTime += e;
+			sigma -= e;
+			queues.advance(currentTime);
+			queues.expire(currentTime);
+
+			for (int i = 0; i < x.size(); i++) {
+				for (Port in_port : this.getInputPorts())
+					if (x.hasMessages(in_port)) {
+						ArrayList<Message<Serializable>> messageList = in_port.getMessages(x);
+						int port = in_port_ids.get(in_port.getName());
+						for (int k = 0; k < messageList.size(); k++) {
+							job = (String) messageList.get(k).getData();
+							queues.add(port, job, currentTime);
+							job_received++;
+							if (currentTime > 0)
+								arrival_rate = job_received / currentTime;
+						}
+						if (queues.ports() == 1)
+							start_waiting = currentTime;
+					}
+				if (!phaseIs("combining") && queues.allNonEmpty() && exactMatch()) {
+					total_waiting_time += currentTime - start_waiting;
+					if (currentTime != 0)
+						throughput = job_created / currentTime;
+					queues.hold(job);
+					holdIn("combining", processing_time);
+				} else if (phaseIs("passive")) {
+					start_waiting = currentTime;
+					holdIn("waiting", Double.POSITIVE_INFINITY);
+				}
+			}
+		}
+
+		private boolean exactMatch() {
+			String match = queues.match();
+			if (match == null)
+				return false;
+			job = match;
+			job_created_str = match;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package Models.java;
+
+/** The assertions of the tests, which run as plain main methods (see run-tests.sh). */
+final class Check {
+
+	private Check() {
+	}
+
+	static void that(boolean condition, String message) {
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	static void equal(Object expected, Object actual, String message) {
+		if (expected == null ? actual != null : !expected.equals(actual))
+			throw new AssertionError(message + "\n  expected: " + expected + "\n  actual:   " + actual);
+	}
+}
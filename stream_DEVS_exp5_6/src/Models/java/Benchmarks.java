@@ -0,0 +1,698 @@
+package Models.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import com.ms4systems.devs.core.message.MessageBag;
+import com.ms4systems.devs.core.message.impl.MessageBagImpl;
+
+/**
+ * Stand-alone micro benchmarks for the simulation support code. They do not
+ * need the DEVS runtime, so they can be run from the command line:
+ *
+ * <pre>
+ * java Models.java.Benchmarks [case ...]
+ * </pre>
+ *
+ * With no arguments every case is run. Each case prints the legacy code path
+ * first and the current one second. The nodes case is the exception: it
+ * drives the Markov action nodes themselves, so it needs the MS4Me runtime
+ * on the class path and only measures the current code.
+ */
+public class Benchmarks {
+
+	static final int WARMUP_ROUNDS = 2;
+
+	public static void main(String[] args) throws Exception {
+		String[] cases = args.length > 0 ? args : new String[] { "analytics", "trace", "logging", "markov", "variates", "phases", "join", "nodes" };
+		for (String name : cases) {
+			if (name.equals("analytics"))
+				analytics();
+			else if (name.equals("trace"))
+				trace();
+			else if (name.equals("logging"))
+				logging();
+			else if (name.equals("markov"))
+				markov();
+			else if (name.equals("variates"))
+				variates();
+			else if (name.equals("phases"))
+				phases();
+			else if (name.equals("join"))
+				join();
+			else if (name.equals("nodes"))
+				nodes();
+			else
+				System.out.println("unknown benchmark case: " + name);
+		}
+	}
+
+	static void report(String label, long events, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.println(String.format("%-40s %12d events %10.3f s %14.0f events/s",
+				label, events, seconds, events / seconds));
+	}
+
+	// ---------------------------------------------------------------------
+	// analytics: one trace row per event, as written by t1..t4/j*/drop
+
+	static void analytics() throws IOException {
+		File dir = Files.createTempDirectory("analytics-bench").toFile();
+		String header = "Simulation time, Job arrival rate, Throughput, Total jobs lost\n";
+		int legacyEvents = 20000;
+		int sinkEvents = 1000000;
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			String fileName = new File(dir, "legacy.csv").getPath();
+			writeHeader(fileName, header);
+			long start = System.nanoTime();
+			for (int i = 0; i < legacyEvents; i++)
+				legacyAppend(fileName, row(i));
+			if (round == WARMUP_ROUNDS)
+				report("analytics: open/append/close per row", legacyEvents, System.nanoTime() - start);
+		}
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			AnalyticsSink sink = new AnalyticsSink();
+			String fileName = new File(dir, "sink.csv").getPath();
+			long start = System.nanoTime();
+			sink.open(fileName, header);
+			for (int i = 0; i < sinkEvents; i++)
+				sink.append(fileName, row(i));
+			sink.closeAll();
+			if (round == WARMUP_ROUNDS)
+				report("analytics: AnalyticsSink channel", sinkEvents, System.nanoTime() - start);
+		}
+
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	// ---------------------------------------------------------------------
+	// trace: time spent on the simulation thread per sync-style row
+
+	static void trace() throws IOException {
+		File dir = Files.createTempDirectory("trace-bench").toFile();
+		String header = "Simulation time, Total waiting time, Total job waiting, Average queue size, "
+				+ "Job arrival rate, Throughput, Job from queue, Job has waited for";
+		int events = 1000000;
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			AnalyticsSink sink = new AnalyticsSink();
+			String fileName = new File(dir, "sink.csv").getPath();
+			sink.open(fileName, header + "\n");
+			long start = System.nanoTime();
+			for (int i = 0; i < events; i++) {
+				double t = i * 0.731;
+				sink.append(fileName, "" + t + "," + (t * 0.5) + "," + (t * 0.25) + "," + (i % 7) * 0.25
+						+ "," + 0.4 + "," + 0.3 + "," + (i % 4 + 1) + "," + (t * 0.01) + "\n");
+			}
+			long elapsed = System.nanoTime() - start;
+			sink.closeAll();
+			if (round == WARMUP_ROUNDS)
+				report("trace: format+write on sim thread", events, elapsed);
+		}
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			AnalyticsSink sink = new AnalyticsSink();
+			TracePipeline pipeline = new TracePipeline(sink, TracePipeline.DEFAULT_CAPACITY,
+					TracePipeline.Backpressure.BLOCK);
+			TraceChannel trace = pipeline.open(new File(dir, "ring.csv").getPath(), header, "ddddddid");
+			// bursts that fit in the ring; the writer catches up between bursts, as it
+			// does while the simulation is busy with transitions that write no rows
+			int burst = TracePipeline.DEFAULT_CAPACITY / 2;
+			long elapsed = 0;
+			for (int i = 0; i < events;) {
+				long start = System.nanoTime();
+				for (int end = Math.min(events, i + burst); i < end; i++) {
+					double t = i * 0.731;
+					trace.row(t).col(t * 0.5).col(t * 0.25).col((i % 7) * 0.25)
+							.col(0.4).col(0.3).col(i % 4 + 1).col(t * 0.01).end();
+				}
+				elapsed += System.nanoTime() - start;
+				pipeline.awaitDrained();
+			}
+			pipeline.close();
+			sink.closeAll();
+			if (round == WARMUP_ROUNDS)
+				report("trace: publish to TracePipeline ring", events, elapsed);
+		}
+
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	// ---------------------------------------------------------------------
+	// logging: the messages of one internal transition with logging disabled
+
+	static volatile String lastMessage;
+
+	static void logging() {
+		int events = 5000000;
+		String[] phases = { "active", "portFLOW4_state", "passive", "port2_state" };
+		Double[] sigmas = new Double[1024];
+		for (int i = 0; i < sigmas.length; i++)
+			sigmas[i] = i * 0.37;
+		ModelLog.setEnabled(false);
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < events; i++) {
+				// the simulator drops the text, but it was built and passed on anyway
+				lastMessage = "Internal transition from active";
+				lastMessage = "Holding in phase " + phases[i & 3] + " for time " + sigmas[i & 1023];
+			}
+			long elapsed = System.nanoTime() - start;
+			bytes = allocatedBytes() - bytes;
+			if (round == WARMUP_ROUNDS) {
+				report("logging: messages built unconditionally", events, elapsed);
+				reportAllocation(bytes, events);
+			}
+		}
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < events; i++) {
+				// never dereferenced while logging is off
+				ModelLog.message(null, "Internal transition from active");
+				ModelLog.holding(null, phases[i & 3], sigmas[i & 1023]);
+			}
+			long elapsed = System.nanoTime() - start;
+			bytes = allocatedBytes() - bytes;
+			if (round == WARMUP_ROUNDS) {
+				report("logging: ModelLog, logging disabled", events, elapsed);
+				reportAllocation(bytes, events);
+			}
+		}
+		ModelLog.setEnabled(true);
+	}
+
+	// ---------------------------------------------------------------------
+	// markov: successor and time selection of one internalTransitionForMarkov
+
+	static volatile String lastState;
+	static volatile double lastTime;
+
+	static void markov() throws IOException {
+		int events = 5000000;
+		// BEHAVIOR3's fan-out, a wide state and a deterministic step like the
+		// Generator's, written like the model XML files
+		File xml = File.createTempFile("markov-bench", ".xml");
+		StringBuilder sb = new StringBuilder("<ProbDEVS>\n");
+		appendTransition(sb, "active", "portf_95_state", 0.95, "Uniform");
+		appendTransition(sb, "active", "portf_5_state", 0.05, "Uniform");
+		for (int i = 0; i < 32; i++)
+			appendTransition(sb, "wide", "branch" + i + "_state", 1.0 + (i % 5), "Exponential");
+		appendTransition(sb, "chain", "m1_state", 1.0, "Uniform", 1.0, 1.0);
+		sb.append("</ProbDEVS>\n");
+		writeHeader(xml.getPath(), sb.toString());
+		TransitionTable table = TransitionTable.load(xml.getPath());
+		xml.delete();
+
+		for (String state : new String[] { "active", "wide", "chain" }) {
+			LegacyMarkov legacy = new LegacyMarkov(table);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				RandomStream rand = RandomStream.of(new java.util.Random(1));
+				long bytes = allocatedBytes();
+				long start = System.nanoTime();
+				for (int i = 0; i < events; i++)
+					legacy.step(state, rand);
+				long elapsed = System.nanoTime() - start;
+				bytes = allocatedBytes() - bytes;
+				if (round == WARMUP_ROUNDS) {
+					report("markov: string lookups, " + state, events, elapsed);
+					reportAllocation(bytes, events);
+				}
+			}
+
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				RandomStream rand = RandomStream.of(1L);
+				long bytes = allocatedBytes();
+				long start = System.nanoTime();
+				for (int i = 0; i < events; i++) {
+					TransitionTable.State from = table.state(state);
+					int succ = from.next(rand);
+					lastState = from.getSuccName(succ);
+					lastTime = from.sampleTime(succ, rand);
+				}
+				long elapsed = System.nanoTime() - start;
+				bytes = allocatedBytes() - bytes;
+				if (round == WARMUP_ROUNDS) {
+					report("markov: TransitionTable, " + state, events, elapsed);
+					reportAllocation(bytes, events);
+				}
+			}
+
+			table.setSelection(TransitionTable.Selection.ALIAS);
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				RandomStream rand = RandomStream.of(1L);
+				long start = System.nanoTime();
+				for (int i = 0; i < events; i++) {
+					TransitionTable.State from = table.state(state);
+					int succ = from.next(rand);
+					lastState = from.getSuccName(succ);
+					lastTime = from.sampleTime(succ, rand);
+				}
+				long elapsed = System.nanoTime() - start;
+				if (round == WARMUP_ROUNDS)
+					report("markov: TransitionTable alias, " + state, events, elapsed);
+			}
+			table.setSelection(TransitionTable.Selection.CUMULATIVE);
+		}
+	}
+
+	static void appendTransition(StringBuilder sb, String from, String to, double prob, String type) {
+		appendTransition(sb, from, to, prob, type, 0.0, 1.0);
+	}
+
+	static void appendTransition(StringBuilder sb, String from, String to, double prob, String type,
+			double lower, double upper) {
+		sb.append("<TransitionInfo><StartState>").append(from).append("</StartState><EndState>").append(to)
+				.append("</EndState><ProbValue>").append(prob).append("</ProbValue><TimeInfo><Type>").append(type)
+				.append("</Type><Lower>").append(lower).append("</Lower><Upper>").append(upper)
+				.append("</Upper><Mean>1.0</Mean><Sigma>1.0</Sigma>")
+				.append("<Alpha>1.0</Alpha></TimeInfo></TransitionInfo>\n");
+	}
+
+	/**
+	 * The lookups internalTransitionForMarkov made through ContinuousTimeMarkov
+	 * (getSuccs three times, getTransitionInfoFor per successor scanned,
+	 * normalFactor, then the time of the chosen transition), on string keyed
+	 * maps since the Markov library is not available outside the DEVS runtime.
+	 */
+	static class LegacyMarkov {
+		final java.util.Map<String, java.util.ArrayList<String>> succs = new java.util.HashMap<String, java.util.ArrayList<String>>();
+		final java.util.Map<String, Double> probs = new java.util.HashMap<String, Double>();
+		final java.util.Map<String, TransitionTable.TimeSampler> times = new java.util.HashMap<String, TransitionTable.TimeSampler>();
+
+		LegacyMarkov(TransitionTable table) {
+			for (int id = 0; id < table.getStateCount(); id++) {
+				TransitionTable.State s = table.state(id);
+				java.util.ArrayList<String> list = new java.util.ArrayList<String>();
+				for (int i = 0; i < s.getSuccCount(); i++) {
+					list.add(s.getSuccName(i));
+					probs.put(s.getName() + s.getSuccName(i), s.getProbability(i));
+					times.put(s.getName() + s.getSuccName(i), s.getTimeSampler(i));
+				}
+				succs.put(s.getName(), list);
+			}
+		}
+
+		double normalFactor(String state) {
+			double sum = 0;
+			for (String succ : succs.get(state))
+				sum += probs.get(state + succ);
+			return sum;
+		}
+
+		void step(String state, RandomStream rand) {
+			if (succs.get(state).size() == 0)
+				return;
+			if (succs.get(state).size() == 1 && succs.get(state).get(0).equals(state))
+				return;
+			double sample = rand.nextDouble();
+			double min = 0.0, max = 0.0;
+			String selSucc = state;
+			double norm = normalFactor(state);
+			for (String succ : succs.get(state)) {
+				min = max;
+				max += probs.get(state + succ) / norm;
+				if (min < sample && sample <= max) {
+					selSucc = succ;
+					break;
+				}
+			}
+			lastState = selSucc;
+			lastTime = times.get(state + selSucc).next(rand);
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// variates: the time draws of the TimeInfo distributions
+
+	static volatile double lastVariate;
+
+	static void variates() {
+		int events = 20000000;
+		String[] kinds = { "uniform", "exponential", "normal" };
+		for (String kind : kinds) {
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				java.util.SplittableRandom rand = new java.util.SplittableRandom(1);
+				java.util.Random gauss = new java.util.Random(1);
+				double sum = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < events; i++) {
+					// one variate per call: inversion for the exponential, polar method for the normal
+					if (kind.equals("uniform"))
+						sum += rand.nextDouble();
+					else if (kind.equals("exponential"))
+						sum += -Math.log(1.0 - rand.nextDouble());
+					else
+						sum += gauss.nextGaussian();
+				}
+				long elapsed = System.nanoTime() - start;
+				lastVariate = sum;
+				if (round == WARMUP_ROUNDS)
+					report("variates: one at a time, " + kind, events, elapsed);
+			}
+
+			for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+				RandomStream rand = RandomStream.of(1L);
+				double sum = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < events; i++) {
+					if (kind.equals("uniform"))
+						sum += rand.nextDouble();
+					else if (kind.equals("exponential"))
+						sum += rand.nextExponential();
+					else
+						sum += rand.nextGaussian();
+				}
+				long elapsed = System.nanoTime() - start;
+				lastVariate = sum;
+				if (round == WARMUP_ROUNDS)
+					report("variates: RandomStream, " + kind, events, elapsed);
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// phases: the phase tests and changes of t1 for one job, five events
+
+	static volatile int lastOutputs;
+
+	static void phases() {
+		int jobs = 10000000;
+		// the next state comes from the XML file, not from the literals the model compares with
+		String next = new String("portFLOW4_state");
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			StringPhaseModel model = new StringPhaseModel();
+			long start = System.nanoTime();
+			for (int i = 0; i < jobs; i++)
+				model.job(next);
+			long elapsed = System.nanoTime() - start;
+			lastOutputs = model.outputs;
+			if (round == WARMUP_ROUNDS)
+				report("phases: String.equals", jobs * 5L, elapsed);
+		}
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			IntPhaseModel model = new IntPhaseModel();
+			int nextPhase = IntPhaseModel.PHASES.id(next);
+			long start = System.nanoTime();
+			for (int i = 0; i < jobs; i++)
+				model.job(nextPhase);
+			long elapsed = System.nanoTime() - start;
+			lastOutputs = model.outputs;
+			if (round == WARMUP_ROUNDS)
+				report("phases: int phases, switch", jobs * 5L, elapsed);
+		}
+	}
+
+	/** t1 before int phases: external, output, internal, output, internal. */
+	static class StringPhaseModel {
+		String phase = "passive";
+		String nextState;
+		int outputs;
+
+		boolean phaseIs(String phase) {
+			return this.phase.equals(phase);
+		}
+
+		void holdIn(String phase) {
+			this.phase = phase;
+		}
+
+		void job(String next) {
+			if (phaseIs("passive"))
+				holdIn("active");
+			nextState = next;
+			for (int event = 0; event < 2; event++) {
+				if (phaseIs("active") && nextState.equals("portFLOW4_state"))
+					outputs++;
+				if (phaseIs("active")) {
+					holdIn("port2_state");
+					holdIn(nextState);
+				} else if (phaseIs("portFLOW4_state"))
+					holdIn("passive");
+			}
+		}
+	}
+
+	/** The same job on int phases, with the internal transition as a switch. */
+	static class IntPhaseModel {
+		static final int PASSIVE = 0;
+		static final int ACTIVE = 1;
+		static final int PORT2_STATE = 2;
+		static final int PORTFLOW4_STATE = 3;
+		static final Phases PHASES = new Phases("passive", "active", "port2_state", "portFLOW4_state");
+
+		String phase = "passive";
+		int phaseId = PASSIVE;
+		int nextPhase;
+		int outputs;
+
+		void holdIn(int phase) {
+			phaseId = phase;
+			this.phase = PHASES.name(phase);
+		}
+
+		void job(int next) {
+			if (phaseId == PASSIVE)
+				holdIn(ACTIVE);
+			nextPhase = next;
+			for (int event = 0; event < 2; event++) {
+				if (phaseId == ACTIVE && nextPhase == PORTFLOW4_STATE)
+					outputs++;
+				switch (phaseId) {
+				case ACTIVE:
+					holdIn(PORT2_STATE);
+					holdIn(nextPhase);
+					break;
+				case PORTFLOW4_STATE:
+					holdIn(PASSIVE);
+					break;
+				}
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// join: the exact match join of sync/BEHAVIOR1 behind a backlog of jobs
+	// that one port never delivers, so they stay pending on the others
+
+	static void join() {
+		int ports = 4;
+		int backlog = 10000;
+		int legacyJoins = 5;
+		int joins = 200000;
+		String[] jobs = new String[joins];
+		String[] times = new String[joins];
+		for (int i = 0; i < joins; i++) {
+			jobs[i] = "job" + i;
+			times[i] = "" + (i * 0.731);
+		}
+
+		// a join scans the whole backlog, so one round is warm enough
+		LegacyJoin join = new LegacyJoin(ports);
+		for (int i = 0; i < backlog; i++)
+			for (int p = 0; p < ports - 1; p++)
+				join.add(p, "starved" + i, times[0]);
+		long start = System.nanoTime();
+		for (int i = 0; i < legacyJoins; i++) {
+			for (int p = 0; p < ports; p++)
+				join.add(p, jobs[i], times[i]);
+			if (join.inputIsInAllQueuesExactMatch())
+				join.removeElementFromAllQueuesExactMatch();
+		}
+		long elapsed = System.nanoTime() - start;
+		lastOutputs = join.size();
+		report("join: scan, " + backlog + " pending", legacyJoins, elapsed);
+		System.out.println(String.format("%-40s %12.1f ms/join", "", elapsed / 1e6 / legacyJoins));
+
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			JoinIndex queues = new JoinIndex(ports);
+			for (int i = 0; i < backlog; i++)
+				for (int p = 0; p < ports - 1; p++)
+					queues.add(p, "starved" + i, 0.0);
+			start = System.nanoTime();
+			for (int i = 0; i < joins; i++) {
+				for (int p = 0; p < ports; p++)
+					queues.add(p, jobs[i], i * 0.731);
+				String match = queues.match();
+				if (match != null)
+					for (int p = 0; p < ports; p++)
+						queues.take(p, match);
+			}
+			elapsed = System.nanoTime() - start;
+			lastOutputs = queues.size();
+			if (round == WARMUP_ROUNDS)
+				report("join: JoinIndex, " + backlog + " pending", joins, elapsed);
+		}
+	}
+
+	/** The queues of sync/BEHAVIOR1 before JoinIndex: a job list and a time list per port. */
+	static class LegacyJoin {
+		final List<LinkedList<String>> jobs = new ArrayList<LinkedList<String>>();
+		final List<LinkedList<String>> times = new ArrayList<LinkedList<String>>();
+		String match;
+
+		LegacyJoin(int ports) {
+			for (int p = 0; p < ports; p++) {
+				jobs.add(new LinkedList<String>());
+				times.add(new LinkedList<String>());
+			}
+		}
+
+		void add(int port, String job, String time) {
+			jobs.get(port).add(job);
+			times.get(port).add(time);
+		}
+
+		int size() {
+			int sum = 0;
+			for (LinkedList<String> queue : jobs)
+				sum += queue.size();
+			return sum;
+		}
+
+		boolean inputIsInAllQueuesExactMatch() {
+			for (String job : jobs.get(0)) {
+				boolean found = true;
+				for (LinkedList<String> queue : jobs)
+					if (!queue.contains(job))
+						found = false;
+				if (found) {
+					match = job;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void removeElementFromAllQueuesExactMatch() {
+			for (int p = 0; p < jobs.size(); p++) {
+				int atIndex = jobs.get(p).indexOf(match);
+				jobs.get(p).remove(match);
+				Queue<String> queue = times.get(p);
+				String element = null;
+				// the time queue was rotated to remove the element at atIndex
+				for (int i = 0, size = queue.size(); i < size; i++) {
+					if (i == atIndex)
+						element = queue.remove();
+					else
+						queue.add(queue.remove());
+				}
+				Double.parseDouble(element);
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------------
+	// nodes: the Markov action nodes of ACTIVITY1, one event on each in turn
+
+	static void nodes() throws IOException {
+		File dir = Files.createTempDirectory("nodes-bench").toFile();
+		RunContext context = new RunContext(dir, 1);
+		MarkovActionNode[] nodes = { new t1(), new t2(), new t3(), new t4(), new j1(), new j2(), new j31(),
+				new j32(), new j4(), new drop(), new threshold(), new diffusion() };
+		ModelLog.setEnabled(false);
+		for (MarkovActionNode node : nodes) {
+			node.setRunContext(context);
+			node.initialize();
+		}
+		// a fresh JVM compiles the transitions during the first events
+		int warmup = 20000;
+		long start = System.nanoTime();
+		drive(nodes, warmup);
+		report("nodes: first events", warmup, System.nanoTime() - start);
+
+		int events = 5000000;
+		for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+			start = System.nanoTime();
+			drive(nodes, events);
+			long elapsed = System.nanoTime() - start;
+			if (round == WARMUP_ROUNDS)
+				report("nodes: steady state", events, elapsed);
+		}
+		context.close();
+		AnalyticsSink.shared().closeAll();
+		delete(dir);
+		ModelLog.setEnabled(true);
+	}
+
+	// a passive node gets a job, a busy one makes its output and internal transition
+	static void drive(MarkovActionNode[] nodes, int events) {
+		int outputs = 0;
+		for (int i = 0; i < events; i++) {
+			MarkovActionNode node = nodes[i % nodes.length];
+			if (node.getTimeAdvance() >= node.getMaxTA()) {
+				MessageBag bag = new MessageBagImpl();
+				bag.add(node.in, String.valueOf(15 + i % 10));
+				node.externalTransition(1.0, bag);
+			} else {
+				outputs += node.getOutput().size();
+				node.internalTransition();
+			}
+		}
+		lastOutputs = outputs;
+	}
+
+	static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null)
+			for (File c : children)
+				delete(c);
+		f.delete();
+	}
+
+	/** Bytes allocated by this thread so far, or -1 if the JVM cannot tell. */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	static void reportAllocation(long bytes, long events) {
+		if (bytes >= 0)
+			System.out.println(String.format("%-40s %12.1f bytes/event", "", (double) bytes / events));
+	}
+
+	static String row(int i) {
+		double currentTime = i * 0.731;
+		double arrival_rate = currentTime > 0 ? i / currentTime : 0.0;
+		double throughput = currentTime > 0 ? (i / 2) / currentTime : 0.0;
+		int total_jobs_lost = i / 100;
+		return "" + currentTime + "," + arrival_rate + "," + throughput + "," + total_jobs_lost + "\n";
+	}
+
+	static void writeHeader(String fileName, String header) throws IOException {
+		FileWriter w = new FileWriter(fileName);
+		w.write(header);
+		w.close();
+	}
+
+	// The per-row path the models used before AnalyticsSink
+	static void legacyAppend(String fileName, String str) {
+		try {
+			BufferedWriter out = new BufferedWriter(new FileWriter(fileName, true));
+			out.write(str);
+			out.close();
+		} catch (IOException e) {
+			System.out.println("exception occurred" + e);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package Models.java;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped view of a trace written by {@link BinaryTraceWriter}.
+ * Values are read straight from the mapping; nothing is copied up front.
+ */
+public class BinaryTraceReader {
+
+	private final TraceLayout layout;
+	private final ByteBuffer data;
+	private final int columns;
+	private final int rows;
+
+	public BinaryTraceReader(String fileName) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		try {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			byte[] magic = new byte[BinaryTraceWriter.MAGIC.length];
+			map.get(magic);
+			if (!Arrays.equals(magic, BinaryTraceWriter.MAGIC))
+				throw new IOException("Not a binary trace file: " + fileName);
+			int dataOffset = map.getInt();
+			columns = map.getInt();
+			String header = readString(map);
+			String kinds = readString(map);
+			String missing = readString(map);
+			layout = new TraceLayout(header, kinds, missing);
+			map.position(dataOffset);
+			data = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+			rows = data.capacity() / (columns * 8);
+		} finally {
+			// the mapping stays valid after the channel is closed
+			channel.close();
+		}
+	}
+
+	private static String readString(ByteBuffer b) {
+		byte[] bytes = new byte[b.getInt()];
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public TraceLayout getLayout() {
+		return layout;
+	}
+
+	public int getColumnCount() {
+		return columns;
+	}
+
+	public int getRowCount() {
+		return rows;
+	}
+
+	public double get(int row, int column) {
+		return data.getDouble((row * columns + column) * 8);
+	}
+
+	/** Copies one row into values, which must hold at least getColumnCount() doubles. */
+	public void readRow(int row, double[] values) {
+		int base = row * columns * 8;
+		for (int i = 0; i < columns; i++)
+			values[i] = data.getDouble(base + i * 8);
+	}
+}
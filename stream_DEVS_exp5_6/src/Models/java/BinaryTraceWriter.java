@@ -0,0 +1,86 @@
+package Models.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a binary trace: a small header describing the columns followed by
+ * fixed-width rows of little-endian doubles, one 8 byte value per column.
+ *
+ * <pre>
+ * magic        8 bytes  "DEVSTRC1"
+ * dataOffset   int      start of the first row, a multiple of 8
+ * columnCount  int
+ * header       int length + UTF-8   CSV header line
+ * kinds        int length + UTF-8   one letter per column, see TraceLayout
+ * missing      int length + UTF-8   token printed for NaN values
+ * padding      zero bytes up to dataOffset
+ * rows         columnCount doubles each, until end of file
+ * </pre>
+ *
+ * The row count is not stored; it follows from the file size, so a trace
+ * cut short by a crash is still readable up to the last complete row.
+ * Integer columns are stored as doubles too, which keeps every row the same
+ * width and lets {@link BinaryTraceReader} memory-map the file directly.
+ */
+public class BinaryTraceWriter {
+
+	static final byte[] MAGIC = "DEVSTRC1".getBytes(StandardCharsets.US_ASCII);
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int columns;
+
+	public BinaryTraceWriter(String fileName, TraceLayout layout) throws IOException {
+		File file = new File(fileName);
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		columns = layout.getColumnCount();
+		buffer = ByteBuffer.allocateDirect(Math.max(64 * 1024, columns * 8))
+				.order(ByteOrder.LITTLE_ENDIAN);
+		writeHeader(layout);
+	}
+
+	private void writeHeader(TraceLayout layout) throws IOException {
+		byte[] header = layout.getHeader().getBytes(StandardCharsets.UTF_8);
+		byte[] kinds = layout.getKinds().getBytes(StandardCharsets.UTF_8);
+		byte[] missing = layout.getMissingToken().getBytes(StandardCharsets.UTF_8);
+		int length = MAGIC.length + 4 + 4 + 4 + header.length + 4 + kinds.length + 4 + missing.length;
+		int dataOffset = (length + 7) & ~7;
+		ByteBuffer b = ByteBuffer.allocate(dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+		b.put(MAGIC).putInt(dataOffset).putInt(columns);
+		b.putInt(header.length).put(header);
+		b.putInt(kinds.length).put(kinds);
+		b.putInt(missing.length).put(missing);
+		b.position(0);
+		while (b.hasRemaining())
+			channel.write(b);
+	}
+
+	/** Appends one row; columns beyond width are stored as missing. */
+	public void write(double[] values, int width) throws IOException {
+		if (buffer.remaining() < columns * 8)
+			flush();
+		for (int i = 0; i < columns; i++)
+			buffer.putDouble(i < width ? values[i] : Double.NaN);
+	}
+
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	public void close() throws IOException {
+		flush();
+		channel.close();
+	}
+}
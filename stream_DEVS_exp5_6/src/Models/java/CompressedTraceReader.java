@@ -0,0 +1,103 @@
+package Models.java;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a CSV trace row by row, decompressing on the fly if it was written
+ * with {@link AnalyticsSink.Compression} (x.csv.gz or x.csv.deflate); plain
+ * x.csv files are read as they are. Nothing is inflated to disk.
+ *
+ * <pre>
+ * CompressedTraceReader r = new CompressedTraceReader("sync.csv.gz");
+ * double[] row = new double[r.getColumnCount()];
+ * while (r.next(row)) ...
+ * </pre>
+ *
+ * pandas reads the .gz files directly as well; .deflate files are only
+ * readable through this class (or zlib).
+ */
+public class CompressedTraceReader implements Closeable {
+
+	private final BufferedReader in;
+	private final String header;
+	private final String[] columns;
+
+	public CompressedTraceReader(String fileName) throws IOException {
+		AnalyticsSink.Compression compression = AnalyticsSink.Compression.forFile(fileName);
+		in = new BufferedReader(new InputStreamReader(
+				compression.unwrap(new FileInputStream(fileName)), StandardCharsets.UTF_8), 64 * 1024);
+		header = in.readLine();
+		if (header == null)
+			throw new IOException("Empty trace file: " + fileName);
+		columns = header.split(",");
+		for (int i = 0; i < columns.length; i++)
+			columns[i] = columns[i].trim();
+	}
+
+	public String getHeader() {
+		return header;
+	}
+
+	public String[] getColumns() {
+		return columns.clone();
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/** Index of a column by its trimmed header name, or -1. */
+	public int indexOf(String column) {
+		for (int i = 0; i < columns.length; i++)
+			if (columns[i].equalsIgnoreCase(column))
+				return i;
+		return -1;
+	}
+
+	/** The next data line as written, or null at the end. */
+	public String readLine() throws IOException {
+		return in.readLine();
+	}
+
+	/**
+	 * Parses the next row into values; empty and non-numeric fields (the
+	 * missing tokens "" and "NA") become NaN. Returns false at the end.
+	 */
+	public boolean next(double[] values) throws IOException {
+		String line = in.readLine();
+		if (line == null)
+			return false;
+		int column = 0, start = 0;
+		while (column < values.length) {
+			int comma = line.indexOf(',', start);
+			int end = comma < 0 ? line.length() : comma;
+			values[column++] = parse(line, start, end);
+			if (comma < 0)
+				break;
+			start = comma + 1;
+		}
+		while (column < values.length)
+			values[column++] = Double.NaN;
+		return true;
+	}
+
+	private static double parse(String line, int start, int end) {
+		if (start >= end)
+			return Double.NaN;
+		try {
+			return Double.parseDouble(line.substring(start, end));
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -53,15 +53,30 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
     //ID:SVAR:1
     private static final int ID_MAXTA = 1;
 
+    // Phases, numbered in the order of PHASES
+    private static final int STATE2 = 0;
+    private static final int GENERATING = 1;
+    private static final int M1_STATE = 2;
+    private static final int M2_STATE = 3;
+    private static final int M3_STATE = 4;
+    private static final int M4_STATE = 5;
+    private static final int PASSIVE = 6;
+    static final Phases PHASES = new Phases("state2", "generating", "m1_state", "m2_state", "m3_state", "m4_state", "passive");
+
     // Declare state variables
     private PropertyChangeSupport propertyChangeSupport =
         new PropertyChangeSupport(this);
     protected ContinuousTimeMarkov ctm = new ContinuousTimeMarkov();
+    protected StateOccupancy occupancy;
+    protected TransitionTable transitions;
+    protected RandomStream rng;
     protected double maxTA = Double.MAX_VALUE;
 
     //ENDID
     String phase = "state2";
-    String previousPhase = null;
+    int phaseId = STATE2;
+    int previousPhase = Phases.NONE;
+    int nextPhase = Phases.NONE;
     Double sigma = maxTA;
     Double previousSigma = Double.NaN;
 
@@ -85,6 +100,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 
     // End output ports
     protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+    protected RunContext runContext = RunContext.getDefault();
     protected double currentTime;
 
     // This variable is just here so we can use @SuppressWarnings("unused")
@@ -103,13 +119,17 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
         super(name, simulator);
     }
 
+	public void setRunContext(RunContext runContext) {
+		this.runContext = runContext;
+	}
+
 	public void initialize() {
 		super.initialize();
 
 		currentTime = 0;
 
 		generated_output_counter = 1;
-		ContinuousTimeMarkov.Seed = 2349991+19;
+		ContinuousTimeMarkov.Seed = runContext.getSeed();
 
 		// Default state variable initialization
 		ctm = new ContinuousTimeMarkov();
@@ -122,7 +142,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 			numberOfOutputPorts++;
 			numberOfOutputPorts++;
 
-		holdIn("generating", maxTA);
+		holdIn(GENERATING, maxTA);
 
 		// Initialize Variables
 		//ID:INIT
@@ -130,47 +150,21 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 
 
 		ctm = new ContinuousTimeMarkov();
+		occupancy = runContext.getOccupancy().open(getClass().getSimpleName());
+		rng = runContext.getRandomStreams().open(getClass().getSimpleName());
 		ctm.setTimeToNextEvent(0.0);
 		ctm.setOutput(false);
 		String path = getModelsDirectory().getAbsolutePath();
 		path.replace("bin", "src");
 		try {
-			ctm.fillTransitionInfoList(path + File.separator + "xml" + 
-					//File.separator + "ACTIVITY1_MarkovGenerator.xml");
-					File.separator + "Generator.xml");
-
-//modify TI
-
-			TransitionInfo ti;
-			TimeInfo tf;
-
-			ti = ctm.getTransitionInfoFor("generating", "m1_state");
-            tf = ti.getTInfo();
-            //ti.setProbValue(1.0/numberOfOutputPorts);
-			//tf.setLower(1000);
-            //tf.setUpper(1000);
-			ti = ctm.getTransitionInfoFor("generating", "m2_state");
-            tf = ti.getTInfo();
-            //ti.setProbValue(1.0/numberOfOutputPorts);
-			//tf.setLower(1000);
-            //tf.setUpper(1000);
-			ti = ctm.getTransitionInfoFor("generating", "m3_state");
-            tf = ti.getTInfo();
-            //ti.setProbValue(1.0/numberOfOutputPorts);
-			//tf.setLower(1000);
-            //tf.setUpper(1000);
-			ti = ctm.getTransitionInfoFor("generating", "m4_state");
-            tf = ti.getTInfo();
-            //ti.setProbValue(1.0/numberOfOutputPorts);
-			//tf.setLower(1000);
-            //tf.setUpper(1000);
-
-
-
+			transitions = runContext.getTransitionTables().open(getClass().getSimpleName(),
+					path + File.separator + "xml" + File.separator + "Generator.xml");
+			transitions.setSelection(runContext.getSuccessorSelection(getClass().getSimpleName()));
+			transitions.bind(PHASES);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-		holdIn("generating", 0.);
+		holdIn(GENERATING, 0.);
 
 
 		//<CTM>
@@ -183,15 +177,15 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
     public void internalTransition() {
 		currentTime += sigma;
 
-		if (phaseIs("generating")) {
-			getSimulator().modelMessage("Internal transition from generating");
+		if (phaseIs(GENERATING)) {
+			ModelLog.message(getSimulator(), "Internal transition from generating");
 
 			//ID:TRA:generating
-			holdIn("m1_state", maxTA);
+			holdIn(M1_STATE, maxTA);
 
-			holdIn("m2_state", maxTA);
+			holdIn(M2_STATE, maxTA);
 
-			holdIn("m3_state", maxTA);
+			holdIn(M3_STATE, maxTA);
 
 
 
@@ -204,7 +198,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 
 
 
-			holdIn("m4_state", maxTA);
+			holdIn(M4_STATE, maxTA);
 
 
 
@@ -217,7 +211,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 			//ID:INT:generating
 
 			//<CTM>
-			internalTransitionForMarkov("generating", maxTA, "");
+			internalTransitionForMarkov(GENERATING, maxTA, Phases.NONE);
 
 			//<CTM>
 			//ENDID
@@ -225,41 +219,41 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 			return;
 		}
 
-		if (phaseIs("m1_state")) {
-			getSimulator().modelMessage("Internal transition from port1_state");
+		if (phaseIs(M1_STATE)) {
+			ModelLog.message(getSimulator(), "Internal transition from port1_state");
 
 			//ID:TRA:port1_state
-			holdIn("generating", 0.);
+			holdIn(GENERATING, 0.);
 			generated_output_counter++;
 			//ENDID
 
 			return;
 		}
-		if (phaseIs("m2_state")) {
-			getSimulator().modelMessage("Internal transition from port1_state");
+		if (phaseIs(M2_STATE)) {
+			ModelLog.message(getSimulator(), "Internal transition from port1_state");
 
 			//ID:TRA:port1_state
-			holdIn("generating", 0.);
+			holdIn(GENERATING, 0.);
 			generated_output_counter++;
 			//ENDID
 
 			return;
 		}
-		if (phaseIs("m3_state")) {
-			getSimulator().modelMessage("Internal transition from port1_state");
+		if (phaseIs(M3_STATE)) {
+			ModelLog.message(getSimulator(), "Internal transition from port1_state");
 
 			//ID:TRA:port1_state
-			holdIn("generating", 0.);
+			holdIn(GENERATING, 0.);
 			generated_output_counter++;
 			//ENDID
 
 			return;
 		}
-		if (phaseIs("m4_state")) {
-			getSimulator().modelMessage("Internal transition from port1_state");
+		if (phaseIs(M4_STATE)) {
+			ModelLog.message(getSimulator(), "Internal transition from port1_state");
 
 			//ID:TRA:port1_state
-			holdIn("generating", 0.);
+			holdIn(GENERATING, 0.);
 			generated_output_counter++;
 			//ENDID
 
@@ -276,7 +270,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
         sigma -= timeElapsed;
 
         // Store prior data
-        previousPhase = phase;
+        previousPhase = phaseId;
         previousSigma = sigma;
 
         // Fire state transition functions
@@ -300,24 +294,24 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 
         //System.out.println("Number of Generated Inputs: "+ generated_output_counter);
 
-        if (phaseIs("generating")) {
+        if (phaseIs(GENERATING)) {
 
             // Output event code
             //ID:OUT:state2
 
             //<CTM>
 
-		if (ctm.isOutput() && ctm.getNextState().equals("m1_state")) {
+		if (ctm.isOutput() && nextPhase == M1_STATE) {
 			//output.add(outM1,"outM1");
 			output.add(outM1, generated_output_counter+""); // Modified to preserve I/O identity
 		}
 
-		if (ctm.isOutput() && ctm.getNextState().equals("m2_state")) {
+		if (ctm.isOutput() && nextPhase == M2_STATE) {
 			//output.add(outM2,"outM2");
 			output.add(outM2, generated_output_counter+""); // Modified to preserve I/O identity
 		}
 
-		if (ctm.isOutput() && ctm.getNextState().equals("m3_state")) {
+		if (ctm.isOutput() && nextPhase == M3_STATE) {
 			//output.add(outM3,"outM3");
 			output.add(outM3, generated_output_counter+""); // Modified to preserve I/O identity
 		}
@@ -333,7 +327,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 
 
 
-		if (ctm.isOutput() && ctm.getNextState().equals("m4_state")) {
+		if (ctm.isOutput() && nextPhase == M4_STATE) {
 			//output.add(outM4,"outM4");
 			output.add(outM4, generated_output_counter+""); // Modified to preserve I/O identity
 		}
@@ -362,93 +356,51 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
     //ID:CUST:0
     //<CTM>
     public double[] fillProbabilities(String state) {
-        if (ctm.getSuccs(state).size() == 0) {
+        TransitionTable.State from = transitions.state(state);
+        if (from == null) {
             return new double[0];
         }
-        double[] probabilities = new double[ctm.getSuccs(state).size()];
-        for (String succ : ctm.getSuccs(state)) {
-            if (succ.equals(state)) {
-                continue;
-            }
-            com.ms4systems.devs.markov.TransitionInfo ti =
-                ctm.getTransitionInfoFor(state, succ);
-            probabilities[ctm.getIndex(succ)] = ti.getProbValue();
-        }
-        return probabilities;
+        return from.getSuccessors().getExitProbabilities();
     }
 
-    public void internalTransitionForMarkov(String state, double sta,
-        String phase) {
+    public void internalTransitionForMarkov(int state, double sta,
+        int phase) {
         double timeToNextEvent = ctm.getTimeToNextEvent();
         if (timeToNextEvent == 0) {
             timeToNextEvent = Double.POSITIVE_INFINITY;
-            if (ctm.getSuccs(state).size() == 0) {
+            transitions.advance(currentTime);
+            TransitionTable.State from = transitions.stateForPhase(state);
+            if (from == null || from.isAbsorbing()) {
                 return;
             }
-            if (ctm.getSuccs(state).size() == 1) {
-                ArrayList succs = ctm.getSuccs(state);
-                if (succs.get(0).equals(state)) {
-                    return;
-                }
-            }
-            double sample = ctm.getRand().nextDouble();
-            double min = 0.0;
-            double max = 0.0;
-            boolean found = false;
-            String SelSucc = state;
-            double norm = ctm.normalFactor(state);
-            for (String succ : ctm.getSuccs(state)) {
-                min = max;
-                com.ms4systems.devs.markov.TransitionInfo ti =
-                    ctm.getTransitionInfoFor(state, succ);
-                max += ti.getProbValue() / norm;
-                if (min < sample && sample <= max) {
-                    found = true;
-                    ctm.setNextState(succ);
-                    SelSucc = succ;
-                    break;
-                }
-            }
-            if (!found) {
-                ctm.setNextState(state);
-            }
-            double time = ctm.timeToNextEvent(state, SelSucc, norm);
+            int succ = from.next(rng);
+            nextPhase = from.getSuccPhase(succ);
+            ctm.setNextState(from.getSuccName(succ));
+            double time = from.sampleTime(succ, rng);
             ctm.setTimeToNextEvent(time);
             timeToNextEvent = time;
             if (timeToNextEvent > sta) {
                 timeToNextEvent = sta;
                 ctm.setTimeToNextEvent(timeToNextEvent);
-                if (!phase.equals("")) {
-                    ctm.setNextState(phase);
+                if (phase != Phases.NONE) {
+                    nextPhase = phase;
                 } else {
-                    ctm.setNextState(state);
+                    nextPhase = state;
                 }
+                ctm.setNextState(PHASES.name(nextPhase));
             }
         }
-        if (previousPhase != null && previousPhase.equals(state)) {
-            previousPhase = null;
+        if (previousPhase == state) {
+            previousPhase = Phases.NONE;
             ctm.setTimeToNextEvent(0.0);
-            String nextState = ctm.getNextState();
-            holdIn(nextState, 0.);
+            holdIn(nextPhase, 0.);
             ctm.setOutput(false);
         } else {
-            com.ms4systems.devs.markov.TimeInState tm =
-                ctm.getTimeInState(state);
-            if (tm == null) {
-                tm = new com.ms4systems.devs.markov.TimeInState();
-                tm.setStateName(state);
-                tm.setCountInState(0);
-                tm.setElapsedTime(0.);
-                ctm.getTimeInStateList().add(tm);
-            }
             holdIn(state, timeToNextEvent);
             ctm.setOutput(true);
             previousPhase = state;
-            ctm.incCount(tm);
-            ctm.updateElapsedTime(tm, timeToNextEvent);
-            double accLifeTime = ctm.getAccLifeTime() + timeToNextEvent;
-            ctm.setAccLifeTime(accLifeTime);
-            ctm.printTimeInState();
+            ctm.setAccLifeTime(ctm.getAccLifeTime() + timeToNextEvent);
+            occupancy.enter(PHASES.name(state), timeToNextEvent, currentTime);
         }
     }
 
@@ -545,18 +497,22 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
 
     // Convenience functions
     protected void passivate() {
-        passivateIn("passive");
+        passivateIn(PASSIVE);
     }
 
-    protected void passivateIn(String phase) {
+    protected void passivateIn(int phase) {
         holdIn(phase, Double.POSITIVE_INFINITY);
     }
 
     protected void holdIn(String phase, Double sigma) {
-        this.phase = phase;
+        holdIn(PHASES.id(phase), sigma);
+    }
+
+    protected void holdIn(int phase, Double sigma) {
+        this.phaseId = phase;
+        this.phase = PHASES.name(phase);
         this.sigma = sigma;
-        getSimulator()
-            .modelMessage("Holding in phase " + phase + " for time " + sigma);
+        ModelLog.holding(getSimulator(), this.phase, sigma);
     }
 
     protected static File getModelsDirectory() {
@@ -606,7 +562,7 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
     }
 
     protected void msg(String msg) {
-        getSimulator().modelMessage(msg);
+        ModelLog.message(getSimulator(), msg);
     }
 
     // Phase display
@@ -614,6 +570,10 @@ public class Generator extends AtomicModelImpl implements PhaseBased,
         return this.phase.equals(phase);
     }
 
+    public boolean phaseIs(int phase) {
+        return phaseId == phase;
+    }
+
     public String getPhase() {
         return phase;
     }
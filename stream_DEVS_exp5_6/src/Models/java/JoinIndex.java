@@ -0,0 +1,600 @@
+package Models.java;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The queues of a join node (sync, BEHAVIOR1): one lane per input port,
+ * numbered like the ports, holding the pending jobs in arrival order with
+ * their arrival times. Every job is indexed by its id with its slots on
+ * every lane and the number of lanes that hold it, so the exact match join
+ * never scans a queue:
+ *
+ * <pre>
+ * queues.add(port, job, currentTime);  // O(1)
+ * String job = queues.match();         // O(1) when no job is complete
+ * for (int p = 0; p &lt; queues.ports(); p++)
+ *     arrived = queues.take(p, job);    // O(log c), c complete jobs
+ * </pre>
+ *
+ * A job is complete once it is on every lane; {@link #match()} gives the
+ * complete job that came first on lane 0, which is the job the scan of
+ * the first queue used to find. The complete jobs are a binary heap in
+ * which every job knows its position, so one is removed or reordered in
+ * place when a lane changes. A job taken out of the middle of a lane
+ * leaves an empty slot that is skipped when it reaches the head.
+ *
+ * A lane is a growable ring of primitive slots (job, time, link), so a
+ * waiting time is computed without boxing the time or formatting it.
+ *
+ * The lanes are unbounded unless {@link Bounds} are set: a capacity per
+ * lane, enforced by evicting the oldest job or rejecting the new one, and
+ * a time to live after which {@link #expire(double)} drops a job. Every
+ * job dropped that way is counted per lane, and the age of an evicted or
+ * expired one is recorded if the model asks for it, so a starved port
+ * shows up in the metrics instead of in the heap. The jobs a model is
+ * combining are held ({@link #holdHeads()}, {@link #hold(String)}) and
+ * removed with {@link #takeHeld(int)}, so an eviction while combining
+ * never makes the model consume a job it did not combine.
+ *
+ * The occupancy is kept up to date as jobs come and go: the number of
+ * jobs on all lanes, its mean over simulation time (the model calls
+ * {@link #advance(double)} before the queues change) and the most jobs
+ * each lane has held. All of them are read in constant time.
+ */
+public final class JoinIndex {
+
+	private final Lane[] lanes;
+	private final Map<String, Pending> pending = new HashMap<String, Pending>();
+	// complete jobs, the first on lane 0 at the head
+	private final Heap complete = new Heap();
+	private int size;
+	private int nonEmpty;
+	private double timeToLive = Double.POSITIVE_INFINITY;
+	private Eviction eviction = Eviction.OLDEST_FIRST;
+	private LogHistogram droppedAges;
+	// integral of size() over simulation time, up to lastTime
+	private double area;
+	private double lastTime;
+
+	/** What a full lane does with a new job. */
+	public enum Eviction {
+		/** Drops the oldest job on the lane to make room. */
+		OLDEST_FIRST,
+		/** Drops the new job. */
+		REJECT_NEW
+	}
+
+	public JoinIndex(int ports) {
+		lanes = new Lane[ports];
+		for (int p = 0; p < ports; p++)
+			lanes[p] = new Lane();
+	}
+
+	public int ports() {
+		return lanes.length;
+	}
+
+	/** The number of jobs on a lane. */
+	public int size(int port) {
+		return lanes[port].size;
+	}
+
+	/** The number of jobs on all lanes. */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty(int port) {
+		return lanes[port].size == 0;
+	}
+
+	public boolean allNonEmpty() {
+		return nonEmpty == lanes.length;
+	}
+
+	public boolean allEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Moves the occupancy clock to now, counting the jobs queued since the
+	 * last call; call it before the queues change at that time.
+	 */
+	public void advance(double now) {
+		if (now > lastTime) {
+			area += size * (now - lastTime);
+			lastTime = now;
+		}
+	}
+
+	/**
+	 * The mean of size() over simulation time from 0 to now; the jobs
+	 * queued at the last advance count as queued until now.
+	 */
+	public double getTimeAverageSize(double now) {
+		double end = Math.max(now, lastTime);
+		double total = area + size * (end - lastTime);
+		return end > 0 ? total / end : size;
+	}
+
+	/** The most jobs a lane has held at once. */
+	public int getMaxSize(int port) {
+		return lanes[port].maxSize;
+	}
+
+	/**
+	 * Sets the capacity of the lanes, the time to live and the eviction
+	 * policy; ports maps the port names of the bounds to lane numbers.
+	 * Jobs already queued are only dropped by the next add or expire.
+	 */
+	public void setBounds(Bounds bounds, Map<String, Integer> ports) {
+		for (Lane lane : lanes)
+			lane.capacity = bounds.capacity;
+		for (Map.Entry<String, Integer> entry : bounds.capacities.entrySet()) {
+			Integer port = ports.get(entry.getKey());
+			if (port != null)
+				lanes[port].capacity = entry.getValue();
+		}
+		timeToLive = bounds.timeToLive;
+		eviction = bounds.eviction;
+	}
+
+	/** Records the age of every job evicted or expired from now on. */
+	public void recordDroppedAges(LogHistogram ages) {
+		droppedAges = ages;
+	}
+
+	/** Jobs evicted from a full lane to make room for a new one. */
+	public long getEvicted(int port) {
+		return lanes[port].evicted;
+	}
+
+	/** New jobs rejected by a full lane. */
+	public long getRejected(int port) {
+		return lanes[port].rejected;
+	}
+
+	/** Jobs dropped from a lane because they outlived the time to live. */
+	public long getExpired(int port) {
+		return lanes[port].expired;
+	}
+
+	public long getEvicted() {
+		long sum = 0;
+		for (Lane lane : lanes)
+			sum += lane.evicted;
+		return sum;
+	}
+
+	public long getRejected() {
+		long sum = 0;
+		for (Lane lane : lanes)
+			sum += lane.rejected;
+		return sum;
+	}
+
+	public long getExpired() {
+		long sum = 0;
+		for (Lane lane : lanes)
+			sum += lane.expired;
+		return sum;
+	}
+
+	/**
+	 * Drops the jobs that arrived more than the time to live before now;
+	 * they are the oldest on their lanes, so this looks at the heads only.
+	 */
+	public void expire(double now) {
+		if (timeToLive == Double.POSITIVE_INFINITY)
+			return;
+		for (int port = 0; port < lanes.length; port++) {
+			Lane lane = lanes[port];
+			while (lane.size > 0 && now - lane.times[lane.index(lane.first)] > timeToLive) {
+				dropped(now, poll(port));
+				lane.expired++;
+			}
+		}
+	}
+
+	private void dropped(double now, double arrived) {
+		if (droppedAges != null)
+			droppedAges.record(now - arrived);
+	}
+
+	/**
+	 * Appends a job to a lane; returns true if that completes the job. A
+	 * full lane first evicts its oldest job, or rejects this one.
+	 */
+	public boolean add(int port, String job, double time) {
+		Lane lane = lanes[port];
+		if (lane.size >= lane.capacity && eviction == Eviction.REJECT_NEW) {
+			lane.rejected++;
+			return false;
+		}
+		while (lane.size >= lane.capacity) {
+			dropped(time, poll(port));
+			lane.evicted++;
+		}
+		if (lane.end - lane.first == lane.jobs.length) {
+			if (lane.size <= lane.jobs.length / 2)
+				compact(port);
+			else
+				lane.resize();
+		}
+		Pending p = pending.get(job);
+		if (p == null) {
+			p = new Pending(job, lanes.length);
+			pending.put(job, p);
+		}
+		long slot = lane.append(job, time);
+		boolean completed = false;
+		if (p.tail[port] < 0) {
+			p.head[port] = slot;
+			completed = ++p.lanes == lanes.length;
+		} else
+			lane.next[lane.index(p.tail[port])] = slot;
+		p.tail[port] = slot;
+		size++;
+		if (lane.size++ == 0)
+			nonEmpty++;
+		if (lane.size > lane.maxSize)
+			lane.maxSize = lane.size;
+		if (completed)
+			complete.add(p);
+		return completed;
+	}
+
+	/** The complete job that came first on lane 0, or null if there is none. */
+	public String match() {
+		Pending p = complete.peek();
+		return p == null ? null : p.job;
+	}
+
+	/** The job at the head of a lane, or null if the lane is empty. */
+	public String peekJob(int port) {
+		Lane lane = lanes[port];
+		return lane.size == 0 ? null : lane.jobs[lane.index(lane.first)];
+	}
+
+	/** The arrival time of the job at the head of a lane, or NaN if the lane is empty. */
+	public double peek(int port) {
+		Lane lane = lanes[port];
+		return lane.size == 0 ? Double.NaN : lane.times[lane.index(lane.first)];
+	}
+
+	/** Removes the job at the head of a lane and returns its arrival time, or NaN if the lane is empty. */
+	public double poll(int port) {
+		Lane lane = lanes[port];
+		if (lane.size == 0)
+			return Double.NaN;
+		return remove(port, pending.get(lane.jobs[lane.index(lane.first)]));
+	}
+
+	/** Holds the job at the head of every lane, for a model that combines the heads. */
+	public void holdHeads() {
+		for (Lane lane : lanes)
+			lane.held = lane.size == 0 ? -1 : lane.first;
+	}
+
+	/** Holds the first arrival of a job on every lane, for a model that combines one job. */
+	public void hold(String job) {
+		Pending p = pending.get(job);
+		for (int port = 0; port < lanes.length; port++)
+			lanes[port].held = p == null ? -1 : p.head[port];
+	}
+
+	/**
+	 * Removes the held job of a lane and returns its arrival time, or NaN
+	 * if it was evicted or expired since it was held.
+	 */
+	public double takeHeld(int port) {
+		Lane lane = lanes[port];
+		long slot = lane.held;
+		lane.held = -1;
+		if (slot < 0)
+			return Double.NaN;
+		// a held slot is still the first arrival of its job on the lane
+		return remove(port, pending.get(lane.jobs[lane.index(slot)]));
+	}
+
+	/**
+	 * Removes the first arrival of a job from a lane and returns its arrival
+	 * time, or NaN if the job is not on the lane.
+	 */
+	public double take(int port, String job) {
+		Pending p = pending.get(job);
+		if (p == null || p.tail[port] < 0)
+			return Double.NaN;
+		return remove(port, p);
+	}
+
+	/** The jobs of every lane in arrival order with their arrival times; a held job is starred. */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (Lane lane : lanes) {
+			sb.append(sb.length() == 0 ? "[" : " [");
+			String separator = "";
+			for (long s = lane.first; s < lane.end; s++) {
+				int i = lane.index(s);
+				if (lane.jobs[i] == null)
+					continue;
+				sb.append(separator).append(lane.jobs[i]).append('@').append(lane.times[i]);
+				if (s == lane.held)
+					sb.append('*');
+				separator = ", ";
+			}
+			sb.append(']');
+		}
+		return sb.toString();
+	}
+
+	private double remove(int port, Pending p) {
+		Lane lane = lanes[port];
+		long slot = p.head[port];
+		int i = lane.index(slot);
+		double time = lane.times[i];
+		if (slot == p.tail[port]) {
+			p.head[port] = p.tail[port] = -1;
+			if (p.lanes-- == lanes.length)
+				complete.remove(p);
+			if (p.lanes == 0)
+				pending.remove(p.job);
+		} else {
+			p.head[port] = lane.next[i];
+			// a complete job is ordered by its head on lane 0, which only moves back
+			if (port == 0 && p.lanes == lanes.length)
+				complete.siftDown(p.heapIndex, p);
+		}
+		if (slot == lane.held)
+			lane.held = -1;
+		lane.clear(i, slot);
+		size--;
+		if (--lane.size == 0)
+			nonEmpty--;
+		return time;
+	}
+
+	/**
+	 * Renumbers the jobs of a full lane from its first slot on, so that
+	 * the empty slots left by take() do not make the ring grow while a
+	 * job that never completes holds the head.
+	 */
+	private void compact(int port) {
+		Lane lane = lanes[port];
+		int n = lane.jobs.length;
+		String[] jobs = new String[n];
+		double[] times = new double[n];
+		long[] next = new long[n];
+		long[] renumbered = new long[n];
+		long to = lane.first;
+		for (long s = lane.first; s < lane.end; s++) {
+			int i = lane.index(s);
+			if (lane.jobs[i] == null)
+				continue;
+			int j = lane.index(to);
+			jobs[j] = lane.jobs[i];
+			times[j] = lane.times[i];
+			renumbered[i] = to++;
+		}
+		// slots only move down, so the order of the complete jobs is kept
+		for (long s = lane.first; s < lane.end; s++) {
+			int i = lane.index(s);
+			if (lane.jobs[i] == null)
+				continue;
+			long slot = renumbered[i];
+			next[lane.index(slot)] = lane.next[i] < 0 ? -1 : renumbered[lane.index(lane.next[i])];
+			Pending p = pending.get(lane.jobs[i]);
+			if (p.head[port] == s)
+				p.head[port] = slot;
+			if (p.tail[port] == s)
+				p.tail[port] = slot;
+			if (lane.held == s)
+				lane.held = slot;
+		}
+		lane.jobs = jobs;
+		lane.times = times;
+		lane.next = next;
+		lane.end = to;
+	}
+
+	/** A job with its first and last slot on every lane (-1 if it is not on the lane). */
+	private static final class Pending {
+		final String job;
+		final long[] head;
+		final long[] tail;
+		int lanes;
+		int heapIndex = -1;	// position in complete, -1 if the job is not complete
+
+		Pending(String job, int ports) {
+			this.job = job;
+			head = new long[ports];
+			tail = new long[ports];
+			Arrays.fill(head, -1);
+			Arrays.fill(tail, -1);
+		}
+	}
+
+	/** A binary min-heap of complete jobs by their head on lane 0, each job keeping its position. */
+	private static final class Heap {
+		Pending[] items = new Pending[16];
+		int size;
+
+		Pending peek() {
+			return size == 0 ? null : items[0];
+		}
+
+		void add(Pending p) {
+			if (size == items.length)
+				items = Arrays.copyOf(items, size * 2);
+			siftUp(size++, p);
+		}
+
+		void remove(Pending p) {
+			int i = p.heapIndex;
+			p.heapIndex = -1;
+			Pending last = items[--size];
+			items[size] = null;
+			if (i == size)
+				return;
+			siftDown(i, last);
+			if (items[i] == last)
+				siftUp(i, last);
+		}
+
+		void siftUp(int i, Pending p) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				Pending q = items[parent];
+				if (q.head[0] <= p.head[0])
+					break;
+				items[i] = q;
+				q.heapIndex = i;
+				i = parent;
+			}
+			items[i] = p;
+			p.heapIndex = i;
+		}
+
+		void siftDown(int i, Pending p) {
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				Pending q = items[child];
+				int right = child + 1;
+				if (right < size && items[right].head[0] < q.head[0])
+					q = items[child = right];
+				if (p.head[0] <= q.head[0])
+					break;
+				items[i] = q;
+				q.heapIndex = i;
+				i = child;
+			}
+			items[i] = p;
+			p.heapIndex = i;
+		}
+	}
+
+	/**
+	 * A growable ring of slots. Slots are numbered by arrival and only
+	 * renumbered by compact(); next links the slots of one job on the lane.
+	 */
+	private static final class Lane {
+		String[] jobs = new String[16];
+		double[] times = new double[16];
+		long[] next = new long[16];
+		int mask = 15;
+		long first;	// oldest slot, never an empty one unless the lane is empty
+		long end;	// next slot to append
+		int size;
+		int maxSize;
+		int capacity = Integer.MAX_VALUE;
+		long held = -1;	// slot of the job being combined, -1 if none
+		long evicted, rejected, expired;
+
+		int index(long slot) {
+			return (int) slot & mask;
+		}
+
+		long append(String job, double time) {
+			int i = index(end);
+			jobs[i] = job;
+			times[i] = time;
+			next[i] = -1;
+			return end++;
+		}
+
+		void clear(int i, long slot) {
+			jobs[i] = null;
+			if (slot == first)
+				while (first < end && jobs[index(first)] == null)
+					first++;
+		}
+
+		void resize() {
+			int n = jobs.length * 2;
+			String[] j = new String[n];
+			double[] t = new double[n];
+			long[] x = new long[n];
+			for (long s = first; s < end; s++) {
+				int from = index(s);
+				int to = (int) s & (n - 1);
+				j[to] = jobs[from];
+				t[to] = times[from];
+				x[to] = next[from];
+			}
+			jobs = j;
+			times = t;
+			next = x;
+			mask = n - 1;
+		}
+	}
+
+	/**
+	 * The limits of a join node's lanes, immutable; each method returns a
+	 * copy with one more limit:
+	 *
+	 * <pre>
+	 * JoinIndex.Bounds.UNBOUNDED.capacity(1000).capacity("inFLOW17", 5000)
+	 *         .timeToLive(200.0).eviction(JoinIndex.Eviction.REJECT_NEW)
+	 * </pre>
+	 */
+	public static final class Bounds {
+
+		public static final Bounds UNBOUNDED = new Bounds(Integer.MAX_VALUE, Collections.<String, Integer>emptyMap(),
+				Double.POSITIVE_INFINITY, Eviction.OLDEST_FIRST);
+
+		final int capacity;
+		final Map<String, Integer> capacities;
+		final double timeToLive;
+		final Eviction eviction;
+
+		private Bounds(int capacity, Map<String, Integer> capacities, double timeToLive, Eviction eviction) {
+			this.capacity = capacity;
+			this.capacities = capacities;
+			this.timeToLive = timeToLive;
+			this.eviction = eviction;
+		}
+
+		/** The capacity of every lane without one of its own. */
+		public Bounds capacity(int capacity) {
+			checkCapacity(capacity);
+			return new Bounds(capacity, capacities, timeToLive, eviction);
+		}
+
+		/** The capacity of the lane of one input port. */
+		public Bounds capacity(String port, int capacity) {
+			checkCapacity(capacity);
+			Map<String, Integer> c = new HashMap<String, Integer>(capacities);
+			c.put(port, capacity);
+			return new Bounds(this.capacity, Collections.unmodifiableMap(c), timeToLive, eviction);
+		}
+
+		/** How long, in simulation time, a job may wait for the other ports. */
+		public Bounds timeToLive(double timeToLive) {
+			if (!(timeToLive > 0))
+				throw new IllegalArgumentException("time to live must be positive: " + timeToLive);
+			return new Bounds(capacity, capacities, timeToLive, eviction);
+		}
+
+		public Bounds eviction(Eviction eviction) {
+			if (eviction == null)
+				throw new IllegalArgumentException("eviction must not be null");
+			return new Bounds(capacity, capacities, timeToLive, eviction);
+		}
+
+		private static void checkCapacity(int capacity) {
+			if (capacity < 1)
+				throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+		}
+
+		@Override
+		public String toString() {
+			return "capacity " + (capacity == Integer.MAX_VALUE ? "unbounded" : capacity) + " " + capacities
+					+ ", time to live " + timeToLive + ", " + eviction;
+		}
+	}
+}
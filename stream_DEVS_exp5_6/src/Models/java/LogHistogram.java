@@ -0,0 +1,116 @@
+package Models.java;
+
+/**
+ * Fixed-memory histogram of non-negative values. Buckets are spaced
+ * logarithmically, 8 per power of two, from 2^-16 up to 2^32, so a recorded
+ * value lands in a bucket at most 1/8 (12.5%) wider than itself. Smaller
+ * values share the first bucket and larger ones the last. Count, sum, min and
+ * max are kept exactly.
+ *
+ * Recording does not allocate; one histogram is a few KB whatever the
+ * number of values.
+ */
+public class LogHistogram {
+
+	static final int SUB_BUCKETS = 8;
+	static final int MIN_EXPONENT = -16;
+	static final int MAX_EXPONENT = 32;
+	static final int BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS + 2;
+
+	// bucket 0 holds zero and everything below 2^MIN_EXPONENT, the last one everything from 2^MAX_EXPONENT
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private double sum;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public void record(double value) {
+		if (value != value)
+			return;
+		counts[bucket(value)]++;
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+	}
+
+	static int bucket(double value) {
+		if (value < Math.scalb(1.0, MIN_EXPONENT))
+			return 0;
+		int exponent = Math.getExponent(value);
+		if (exponent >= MAX_EXPONENT)
+			return BUCKETS - 1;
+		// top mantissa bits pick the sub-bucket
+		int sub = (int) ((Double.doubleToRawLongBits(value) >>> (52 - 3)) & (SUB_BUCKETS - 1));
+		return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + sub;
+	}
+
+	/** Lower bound of a bucket. */
+	static double lowerBound(int bucket) {
+		if (bucket == 0)
+			return 0;
+		int b = bucket - 1;
+		return Math.scalb(1.0 + (double) (b % SUB_BUCKETS) / SUB_BUCKETS, b / SUB_BUCKETS + MIN_EXPONENT);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public double getMean() {
+		return count > 0 ? sum / count : Double.NaN;
+	}
+
+	public double getMin() {
+		return count > 0 ? min : Double.NaN;
+	}
+
+	public double getMax() {
+		return count > 0 ? max : Double.NaN;
+	}
+
+	/**
+	 * Approximate value at quantile q (0..1): the middle of the bucket that
+	 * holds it, clamped to the exact min and max.
+	 */
+	public double getQuantile(double q) {
+		if (count == 0)
+			return Double.NaN;
+		long rank = (long) Math.ceil(q * count);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += counts[b];
+			if (seen >= rank) {
+				double mid = b == BUCKETS - 1 ? max : (lowerBound(b) + lowerBound(b + 1)) / 2;
+				return Math.max(min, Math.min(max, mid));
+			}
+		}
+		return max;
+	}
+
+	public LogHistogram copy() {
+		LogHistogram h = new LogHistogram();
+		System.arraycopy(counts, 0, h.counts, 0, BUCKETS);
+		h.count = count;
+		h.sum = sum;
+		h.min = min;
+		h.max = max;
+		return h;
+	}
+
+	public void reset() {
+		java.util.Arrays.fill(counts, 0L);
+		count = 0;
+		sum = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+}
@@ -0,0 +1,45 @@
+package Models.java;
+
+import java.util.function.Supplier;
+
+import com.ms4systems.devs.core.simulation.Simulator;
+
+/**
+ * Model messages for the simulator log. When logging is off the message
+ * text is never built: the parameterized forms only concatenate, and the
+ * {@link Supplier} form only runs, if {@link #isEnabled()}.
+ *
+ * EFACTIVITY1 turns logging off together with
+ * {@code options.setDisableLogging(true)}.
+ */
+public final class ModelLog {
+
+	private static volatile boolean enabled = true;
+
+	private ModelLog() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		ModelLog.enabled = enabled;
+	}
+
+	public static void message(Simulator simulator, String msg) {
+		if (enabled)
+			simulator.modelMessage(msg);
+	}
+
+	public static void message(Simulator simulator, Supplier<String> msg) {
+		if (enabled)
+			simulator.modelMessage(msg.get());
+	}
+
+	/** "Holding in phase &lt;phase&gt; for time &lt;sigma&gt;", as logged by every holdIn. */
+	public static void holding(Simulator simulator, String phase, Double sigma) {
+		if (enabled)
+			simulator.modelMessage("Holding in phase " + phase + " for time " + sigma);
+	}
+}
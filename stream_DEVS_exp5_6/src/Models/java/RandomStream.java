@@ -0,0 +1,103 @@
+package Models.java;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * The uniform, normal and exponential draws a Markov node makes. A node
+ * gets its stream from {@link RandomStreams#open(String)}; it is backed by
+ * a {@link SplittableRandom}.
+ *
+ * The SplittableRandom streams generate normal and exponential variates
+ * with the {@link Ziggurat} method in blocks of {@link #BLOCK} and hand
+ * them out one by one; a block is filled on first use, so a node that never
+ * draws a normal has no normal block. Uniforms are cheaper to draw directly
+ * than through a block.
+ *
+ * A stream belongs to one node and is not thread safe.
+ */
+public abstract class RandomStream {
+
+	static final int BLOCK = 1024;
+
+	/** A uniform double in [0, 1). */
+	public abstract double nextDouble();
+
+	/** A standard normal double. */
+	public abstract double nextGaussian();
+
+	/** An exponential double with mean 1. */
+	public abstract double nextExponential();
+
+	/** A stream starting from a seed, independent of other seeds. */
+	public static RandomStream of(long seed) {
+		return new Split(new SplittableRandom(seed));
+	}
+
+	/** A stream drawing from a java.util.Random. */
+	public static RandomStream of(Random rand) {
+		return new Legacy(rand);
+	}
+
+	static final class Split extends RandomStream {
+		private final SplittableRandom rand;
+		private double[] normals, exponentials;
+		private int nextNormal = BLOCK, nextExponential = BLOCK;
+
+		Split(SplittableRandom rand) {
+			this.rand = rand;
+		}
+
+		@Override
+		public double nextDouble() {
+			return rand.nextDouble();
+		}
+
+		@Override
+		public double nextGaussian() {
+			if (nextNormal == BLOCK) {
+				if (normals == null)
+					normals = new double[BLOCK];
+				for (int i = 0; i < BLOCK; i++)
+					normals[i] = Ziggurat.normal(rand);
+				nextNormal = 0;
+			}
+			return normals[nextNormal++];
+		}
+
+		@Override
+		public double nextExponential() {
+			if (nextExponential == BLOCK) {
+				if (exponentials == null)
+					exponentials = new double[BLOCK];
+				for (int i = 0; i < BLOCK; i++)
+					exponentials[i] = Ziggurat.exponential(rand);
+				nextExponential = 0;
+			}
+			return exponentials[nextExponential++];
+		}
+	}
+
+	static final class Legacy extends RandomStream {
+		private final Random rand;
+
+		Legacy(Random rand) {
+			this.rand = rand;
+		}
+
+		@Override
+		public double nextDouble() {
+			return rand.nextDouble();
+		}
+
+		@Override
+		public double nextGaussian() {
+			return rand.nextGaussian();
+		}
+
+		@Override
+		public double nextExponential() {
+			return -Math.log(1.0 - rand.nextDouble());
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package Models.java;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The random streams of one run. The run's seed is the root; every node's
+ * stream is derived from the root and the node's name only, so it does not
+ * depend on how many nodes there are or in which order they initialize, and
+ * runs with different contexts can go on in parallel.
+ *
+ * <pre>
+ * rng = runContext.getRandomStreams().open(getClass().getSimpleName());
+ * int succ = from.next(rng);
+ * </pre>
+ *
+ * {@link #setNodeSeed(String, long)} changes one node's randomness and
+ * leaves every other stream as it was. Opening a node again (a
+ * re-initialized model) starts its stream over.
+ */
+public class RandomStreams {
+
+	private final long root;
+	private final Map<String, Long> nodeSeeds = new HashMap<String, Long>();
+
+	public RandomStreams(long root) {
+		this.root = root;
+	}
+
+	public long getRoot() {
+		return root;
+	}
+
+	/** The stream of a node. */
+	public RandomStream open(String node) {
+		return RandomStream.of(seedOf(node));
+	}
+
+	/** Gives a node a seed of its own instead of the one derived from the root. */
+	public synchronized void setNodeSeed(String node, long seed) {
+		nodeSeeds.put(node, seed);
+	}
+
+	public synchronized long seedOf(String node) {
+		Long seed = nodeSeeds.get(node);
+		if (seed != null)
+			return mix64(seed);
+		return mix64(root + mix64(hash(node)));
+	}
+
+	// 64 bit FNV-1a; String.hashCode has too few bits to keep nodes apart
+	private static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	// Stafford's mix 13, as SplittableRandom uses; seeds that differ by its
+	// gamma would otherwise give the same sequence shifted by one draw
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,150 @@
+package Models.java;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Visit counts and time spent in each Markov state of a node, kept in
+ * primitive arrays. The Markov nodes record every state they enter
+ * through {@link #enter(String, double, double)} instead of printing the
+ * whole table with ctm.printTimeInState() each time.
+ *
+ * Counters are read with the query methods, or printed for every node of
+ * a run by {@link Registry#report(PrintStream)}, which EFACTIVITY1 calls at
+ * the end. A periodic dump every so many units of simulation time can be
+ * turned on with {@link Registry#setDumpInterval(double)} or the system
+ * property {@code occupancy.dump}.
+ */
+public class StateOccupancy {
+
+	private final Registry registry;
+	private final String node;
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+	private String[] states = new String[8];
+	private long[] visits = new long[8];
+	private double[] time = new double[8];
+	private int count;
+	private double totalTime;
+
+	private StateOccupancy(Registry registry, String node) {
+		this.registry = registry;
+		this.node = node;
+	}
+
+	/** Counts a visit to state that lasts duration, at simulation time now. */
+	public void enter(String state, double duration, double now) {
+		Integer i = index.get(state);
+		int k;
+		if (i == null) {
+			k = add(state);
+		} else
+			k = i;
+		visits[k]++;
+		time[k] += duration;
+		totalTime += duration;
+		if (registry.dumpInterval > 0 && now >= registry.nextDump)
+			registry.dump(now);
+	}
+
+	private int add(String state) {
+		if (count == states.length) {
+			states = Arrays.copyOf(states, count * 2);
+			visits = Arrays.copyOf(visits, count * 2);
+			time = Arrays.copyOf(time, count * 2);
+		}
+		states[count] = state;
+		index.put(state, count);
+		return count++;
+	}
+
+	private void clear() {
+		Arrays.fill(visits, 0, count, 0L);
+		Arrays.fill(time, 0, count, 0.0);
+		totalTime = 0;
+	}
+
+	public String getNode() {
+		return node;
+	}
+
+	public String[] getStates() {
+		return Arrays.copyOf(states, count);
+	}
+
+	public long getVisits(String state) {
+		Integer i = index.get(state);
+		return i == null ? 0 : visits[i];
+	}
+
+	public double getTimeInState(String state) {
+		Integer i = index.get(state);
+		return i == null ? 0 : time[i];
+	}
+
+	/** Total time of all visits; matches ctm's accumulated life time. */
+	public double getTotalTime() {
+		return totalTime;
+	}
+
+	/** Fraction of the node's time spent in state. */
+	public double getShare(String state) {
+		return totalTime > 0 ? getTimeInState(state) / totalTime : 0;
+	}
+
+	/** The occupancy counters of every node of one run. */
+	public static class Registry {
+		private final Map<String, StateOccupancy> nodes = new LinkedHashMap<String, StateOccupancy>();
+		private volatile double dumpInterval = Double.parseDouble(System.getProperty("occupancy.dump", "0"));
+		private volatile double nextDump = dumpInterval;
+
+		/** Returns the counters of a node, cleared; called when the node is initialized. */
+		public synchronized StateOccupancy open(String node) {
+			StateOccupancy occupancy = nodes.get(node);
+			if (occupancy == null) {
+				occupancy = new StateOccupancy(this, node);
+				nodes.put(node, occupancy);
+			} else
+				occupancy.clear();
+			nextDump = dumpInterval;
+			return occupancy;
+		}
+
+		/** The counters of a node, or null if it never opened them. */
+		public synchronized StateOccupancy get(String node) {
+			return nodes.get(node);
+		}
+
+		public synchronized List<StateOccupancy> all() {
+			return new ArrayList<StateOccupancy>(nodes.values());
+		}
+
+		/** Dumps the report every interval units of simulation time; 0 turns it off. */
+		public synchronized void setDumpInterval(double interval) {
+			dumpInterval = interval;
+			nextDump = interval;
+		}
+
+		private synchronized void dump(double now) {
+			if (now < nextDump)
+				return;
+			while (nextDump <= now)
+				nextDump += dumpInterval;
+			System.out.println("State occupancy at simulation time " + now);
+			report(System.out);
+		}
+
+		/** Prints one line per node and state. */
+		public synchronized void report(PrintStream out) {
+			out.println(String.format("%-12s %-20s %10s %14s %8s", "node", "state", "visits", "time", "share"));
+			for (StateOccupancy o : nodes.values())
+				for (int k = 0; k < o.count; k++)
+					out.println(String.format("%-12s %-20s %10d %14.3f %7.2f%%", o.node, o.states[k],
+							o.visits[k], o.time[k], o.totalTime > 0 ? 100 * o.time[k] / o.totalTime : 0));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package Models.java;
+
+/**
+ * One results file fed through the {@link TracePipeline}. Models build a row
+ * out of primitive values on the simulation thread:
+ *
+ * <pre>
+ * trace.row(currentTime).col(arrival_rate).col(throughput).col(total_jobs_lost).end();
+ * </pre>
+ *
+ * and the writer thread turns it into the same CSV text the models used to
+ * write themselves (see {@link TraceLayout}), or into a binary trace.
+ * A {@link #missing()} value is printed as the layout's missing token.
+ * If the pipeline has a {@link TraceSampler} policy for the node, rows the
+ * sampler rejects are not published at all.
+ */
+public class TraceChannel {
+
+	private final TracePipeline pipeline;
+	private final int id;
+	private final String fileName;
+	private final TraceLayout layout;
+	private final double[] row;
+	private int width;
+	private TraceSampler sampler;
+	private SeedAggregator.Tap[] taps;
+
+	// used by the writer thread only; one of them is set
+	AnalyticsSink.Channel out;
+	BinaryTraceWriter binary;
+
+	TraceChannel(TracePipeline pipeline, int id, String fileName, TraceLayout layout) {
+		this.pipeline = pipeline;
+		this.id = id;
+		this.fileName = fileName;
+		this.layout = layout;
+		this.row = new double[layout.getColumnCount()];
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public TraceLayout getLayout() {
+		return layout;
+	}
+
+	public TraceSampler getSampler() {
+		return sampler;
+	}
+
+	void setSampler(TraceSampler sampler) {
+		this.sampler = sampler;
+	}
+
+	void setTaps(SeedAggregator.Tap[] taps) {
+		this.taps = taps;
+	}
+
+	/** Starts a new row with the simulation time in the first column. */
+	public TraceChannel row(double time) {
+		row[0] = time;
+		width = 1;
+		return this;
+	}
+
+	public TraceChannel col(double value) {
+		row[width++] = value;
+		return this;
+	}
+
+	public TraceChannel missing() {
+		row[width++] = Double.NaN;
+		return this;
+	}
+
+	/** Publishes the row to the writer thread unless the sampler skips it. */
+	public void end() {
+		if (taps != null)
+			for (SeedAggregator.Tap tap : taps)
+				tap.record(row, width);
+		if (sampler == null || sampler.sample(row, width))
+			pipeline.publish(id, row, width);
+	}
+
+	/** Publishes the last row the sampler skipped, so the trace ends on the final state. */
+	void publishHeld() {
+		if (sampler != null && sampler.held() != null) {
+			pipeline.publish(id, sampler.held(), sampler.heldWidth());
+			sampler.clearHeld();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package Models.java;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts binary traces back to the CSV files the models write in text
+ * mode, with the same header and column layout, so plots.py and
+ * appendix.py can read them unchanged.
+ *
+ * <pre>
+ * java Models.java.TraceExport &lt;file.bin | directory&gt; ...
+ * </pre>
+ *
+ * Each x.bin is written as x.csv next to it. Directories are searched
+ * recursively.
+ */
+public class TraceExport {
+
+	public static final String BINARY_SUFFIX = ".bin";
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("usage: TraceExport <file" + BINARY_SUFFIX + " | directory> ...");
+			return;
+		}
+		for (String arg : args)
+			exportAll(new File(arg));
+	}
+
+	static void exportAll(File file) throws IOException {
+		if (file.isDirectory()) {
+			File[] children = file.listFiles();
+			if (children != null)
+				for (File child : children)
+					exportAll(child);
+		} else if (file.getName().endsWith(BINARY_SUFFIX)) {
+			String name = file.getPath();
+			String csv = name.substring(0, name.length() - BINARY_SUFFIX.length()) + ".csv";
+			int rows = export(name, csv);
+			System.out.println(name + " -> " + csv + " (" + rows + " rows)");
+		}
+	}
+
+	/** Writes the CSV form of one binary trace and returns the number of rows. */
+	public static int export(String binaryFile, String csvFile) throws IOException {
+		BinaryTraceReader reader = new BinaryTraceReader(binaryFile);
+		TraceLayout layout = reader.getLayout();
+		double[] values = new double[reader.getColumnCount()];
+		StringBuilder sb = new StringBuilder(256);
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(csvFile), StandardCharsets.UTF_8), 64 * 1024);
+		try {
+			out.write(layout.getHeader());
+			out.write('\n');
+			for (int row = 0; row < reader.getRowCount(); row++) {
+				reader.readRow(row, values);
+				sb.setLength(0);
+				layout.format(sb, values, values.length);
+				out.append(sb);
+			}
+		} finally {
+			out.close();
+		}
+		return reader.getRowCount();
+	}
+}
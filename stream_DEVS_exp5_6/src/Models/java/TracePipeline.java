@@ -0,0 +1,359 @@
+package Models.java;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+/**
+ * Moves trace formatting and disk writes off the DEVS event loop. Models
+ * publish primitive rows through their {@link TraceChannel}; a dedicated
+ * writer thread drains the {@link TraceRing}, formats the rows and hands them
+ * to the {@link AnalyticsSink}.
+ *
+ * When the ring is full the {@link Backpressure} policy decides what the
+ * simulation thread does: wait for the writer (BLOCK, the default), discard
+ * the oldest unwritten row (DROP_OLDEST), or queue the row on an unbounded
+ * overflow list that the writer drains after the ring (SPILL). Row order is
+ * preserved by BLOCK and SPILL. The rows published, dropped and spilled and
+ * the producer waits are counted; {@link RunContext} registers the counts
+ * as the TracePipeline metrics of the run.
+ *
+ * Rows are written as CSV by default. With {@link Format#BINARY} each x.csv
+ * is written as a binary x.bin instead (see {@link BinaryTraceWriter});
+ * {@link TraceExport} turns those back into the CSV files. CSV files can be
+ * compressed on the writer thread with {@link #setCompression}, so x.csv
+ * becomes x.csv.gz or x.csv.deflate; binary traces are never compressed
+ * because {@link BinaryTraceReader} maps them into memory.
+ *
+ * Each node can be given a {@link TraceSampler} policy with
+ * {@link #setSampling(String, String)}; the node is the results file name
+ * without directory and extension (t1, sync, ACTIVITY1, ...), and "*"
+ * applies to every node without a policy of its own.
+ *
+ * The defaults can be changed with the system properties
+ * {@code trace.capacity}, {@code trace.backpressure}, {@code trace.format},
+ * {@code trace.compression} and {@code trace.compression.level}, and
+ * {@code trace.sample}, the last one a list such as
+ * {@code t1=every:10,sync=dt:0.5,*=change:0.001}.
+ */
+public class TracePipeline {
+
+	public enum Backpressure {
+		BLOCK, DROP_OLDEST, SPILL
+	}
+
+	public enum Format {
+		CSV, BINARY
+	}
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private static TracePipeline shared;
+
+	private final AnalyticsSink sink;
+	private final TraceRing ring;
+	private final Backpressure backpressure;
+	private final Format format;
+	private volatile AnalyticsSink.Compression compression = AnalyticsSink.Compression.NONE;
+	private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+	private final ConcurrentLinkedQueue<SpilledRow> spill = new ConcurrentLinkedQueue<SpilledRow>();
+	private volatile TraceChannel[] channels = new TraceChannel[0];
+	private final Map<String, String> sampling = new HashMap<String, String>();
+	private volatile SeedAggregator.Replication replication;
+	private final Thread writer;
+	private volatile boolean closed;
+
+	// producer side counters
+	private long published, dropped, spilled, blocked;
+	// rows the writer has finished with
+	private final AtomicLong completed = new AtomicLong();
+
+	public static synchronized TracePipeline shared() {
+		if (shared == null || shared.closed)
+			shared = fromSystemProperties(AnalyticsSink.shared());
+		return shared;
+	}
+
+	/** A new pipeline configured by the trace.* system properties. */
+	public static TracePipeline fromSystemProperties(AnalyticsSink sink) {
+		TracePipeline pipeline = new TracePipeline(sink,
+				Integer.getInteger("trace.capacity", DEFAULT_CAPACITY),
+				Backpressure.valueOf(System.getProperty("trace.backpressure", "BLOCK")),
+				Format.valueOf(System.getProperty("trace.format", "CSV")));
+		pipeline.setSampling(System.getProperty("trace.sample", ""));
+		pipeline.setCompression(
+				AnalyticsSink.Compression.valueOf(System.getProperty("trace.compression", "NONE")),
+				Integer.getInteger("trace.compression.level", Deflater.DEFAULT_COMPRESSION));
+		return pipeline;
+	}
+
+	/** Closes the shared pipeline if one was started. */
+	public static synchronized void closeShared() {
+		if (shared != null)
+			shared.close();
+	}
+
+	public TracePipeline(AnalyticsSink sink, int capacity, Backpressure backpressure) {
+		this(sink, capacity, backpressure, Format.CSV);
+	}
+
+	public TracePipeline(AnalyticsSink sink, int capacity, Backpressure backpressure, Format format) {
+		this.sink = sink;
+		this.ring = new TraceRing(capacity);
+		this.backpressure = backpressure;
+		this.format = format;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drainLoop();
+			}
+		}, "TracePipeline-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Sets the sampling policy of a node, see {@link TraceSampler}. Applies to
+	 * files opened afterwards, so call it before the simulation starts.
+	 */
+	public synchronized void setSampling(String node, String policy) {
+		TraceSampler.parse(policy); // reject bad policies here rather than at open
+		sampling.put(node, policy);
+	}
+
+	/** Sets several policies at once from a list like {@code t1=every:10,*=dt:1}. */
+	public synchronized void setSampling(String policies) {
+		for (String entry : policies.split(",")) {
+			if (entry.trim().isEmpty())
+				continue;
+			int eq = entry.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("Bad trace sampling entry: " + entry);
+			setSampling(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+		}
+	}
+
+	/** Feeds the files opened afterwards into a {@link SeedAggregator} replication. */
+	public void setReplication(SeedAggregator.Replication replication) {
+		this.replication = replication;
+	}
+
+	public synchronized String getSampling(String node) {
+		String policy = sampling.get(node);
+		if (policy == null)
+			policy = sampling.get("*");
+		return policy == null ? TraceSampler.ALL : policy;
+	}
+
+	static String nodeName(String fileName) {
+		// the models build their paths with '\\' whatever the platform
+		String name = fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	/**
+	 * Opens a results file: truncates it, writes the header line and returns
+	 * the channel to publish rows on. Reopening a file that is already open
+	 * (a model re-initialized) first waits for its pending rows to be written.
+	 */
+	public synchronized TraceChannel open(String fileName, String header, String kinds) {
+		return open(fileName, header, kinds, "");
+	}
+
+	public synchronized TraceChannel open(String fileName, String header, String kinds,
+			String missingToken) {
+		TraceChannel[] current = channels;
+		int id = current.length;
+		for (int i = 0; i < current.length; i++)
+			if (current[i].getFileName().equals(fileName)) {
+				id = i;
+				current[i].publishHeld();
+				awaitDrained();
+			}
+		TraceLayout layout = new TraceLayout(header, kinds, missingToken);
+		TraceChannel channel = new TraceChannel(this, id, fileName, layout);
+		channel.setSampler(TraceSampler.parse(getSampling(nodeName(fileName))));
+		if (replication != null)
+			channel.setTaps(replication.tapsFor(nodeName(fileName), layout));
+		try {
+			if (current.length > id && current[id].binary != null)
+				current[id].binary.close();
+			if (format == Format.BINARY)
+				channel.binary = new BinaryTraceWriter(binaryFileName(fileName), layout);
+			else
+				channel.out = sink.open(fileName + compression.suffix(), header + "\n",
+						compression, compressionLevel);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		TraceChannel[] next = java.util.Arrays.copyOf(current, Math.max(current.length, id + 1));
+		next[id] = channel;
+		channels = next;
+		return channel;
+	}
+
+	void publish(int channel, double[] row, int width) {
+		published++;
+		switch (backpressure) {
+		case DROP_OLDEST:
+			if (ring.overwrite(channel, row, width))
+				dropped++;
+			break;
+		case SPILL:
+			// once rows have spilled, keep spilling until the writer catches up so order is kept
+			if (!spill.isEmpty() || !ring.offer(channel, row, width)) {
+				spill.add(new SpilledRow(channel, java.util.Arrays.copyOf(row, width)));
+				spilled++;
+			}
+			break;
+		default:
+			while (!ring.offer(channel, row, width)) {
+				blocked++;
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(10000L);
+			}
+		}
+	}
+
+	/** Waits until the writer thread has written every row published so far. */
+	public void awaitDrained() {
+		while (completed.get() + dropped < published && writer.isAlive()) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(50000L);
+		}
+	}
+
+	/** Writes all pending rows, stops the writer thread and closes the files it opened. */
+	public synchronized void close() {
+		if (closed)
+			return;
+		for (TraceChannel channel : channels)
+			channel.publishHeld();
+		awaitDrained();
+		closed = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (TraceChannel channel : channels) {
+			if (channel.out != null)
+				sink.close(channel.out);
+			if (channel.binary != null) {
+				try {
+					channel.binary.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Compresses the CSV files opened afterwards at a {@link Deflater} level,
+	 * 1 (fastest) to 9 (smallest), or -1 for the default (6).
+	 */
+	public void setCompression(AnalyticsSink.Compression compression, int level) {
+		if (level < -1 || level > 9)
+			throw new IllegalArgumentException("Bad compression level: " + level);
+		this.compression = compression;
+		this.compressionLevel = level;
+	}
+
+	public AnalyticsSink.Compression getCompression() {
+		return compression;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public Backpressure getBackpressure() {
+		return backpressure;
+	}
+
+	public long getPublished() {
+		return published;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getSpilled() {
+		return spilled;
+	}
+
+	/** How many times a publishing thread waited for the writer. */
+	public long getBlocked() {
+		return blocked;
+	}
+
+	private void drainLoop() {
+		double[] values = new double[TraceRing.MAX_COLUMNS];
+		StringBuilder sb = new StringBuilder(256);
+		int idle = 0;
+		while (true) {
+			int width = ring.poll(values);
+			if (width >= 0) {
+				write(ring.polledChannel(), values, width, sb);
+				idle = 0;
+				continue;
+			}
+			SpilledRow s = spill.peek();
+			if (s != null) {
+				write(s.channel, s.values, s.values.length, sb);
+				spill.poll();
+				idle = 0;
+				continue;
+			}
+			if (closed)
+				return;
+			// back off while the simulation is busy elsewhere
+			LockSupport.parkNanos(idle < 100 ? 20000L : 1000000L);
+			idle++;
+		}
+	}
+
+	private void write(int id, double[] values, int width, StringBuilder sb) {
+		TraceChannel channel = channels[id];
+		if (channel.out != null) {
+			sb.setLength(0);
+			channel.getLayout().format(sb, values, width);
+			channel.out.append(sb);
+		} else if (channel.binary != null) {
+			try {
+				channel.binary.write(values, width);
+			} catch (IOException e) {
+				System.out.println("exception occurred" + e);
+			}
+		}
+		completed.lazySet(completed.get() + 1);
+	}
+
+	static String binaryFileName(String fileName) {
+		if (fileName.endsWith(".csv"))
+			fileName = fileName.substring(0, fileName.length() - 4);
+		return fileName + TraceExport.BINARY_SUFFIX;
+	}
+
+	private static class SpilledRow {
+		final int channel;
+		final double[] values;
+
+		SpilledRow(int channel, double[] values) {
+			this.channel = channel;
+			this.values = values;
+		}
+	}
+}
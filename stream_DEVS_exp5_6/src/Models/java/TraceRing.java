@@ -0,0 +1,116 @@
+package Models.java;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated ring of primitive trace rows. There is exactly one producer
+ * (the simulation thread) and one consumer (the trace writer thread); the
+ * only shared state is the head and tail sequence numbers.
+ *
+ * Each slot holds a channel id, a column count and up to
+ * {@link #MAX_COLUMNS} doubles, so publishing a row never allocates.
+ */
+class TraceRing {
+
+	static final int MAX_COLUMNS = 16;
+
+	private final int capacity;
+	private final int mask;
+	private final int[] channels;
+	private final int[] widths;
+	private final double[] values;
+
+	// next sequence to consume; advanced by the consumer, or by the producer when dropping
+	private final AtomicLong head = new AtomicLong();
+	// next sequence to produce; advanced only by the producer
+	private final AtomicLong tail = new AtomicLong();
+
+	// consumer side result of the last poll()
+	private int polledChannel;
+
+	TraceRing(int requestedCapacity) {
+		int c = 1;
+		while (c < requestedCapacity)
+			c <<= 1;
+		capacity = c;
+		mask = c - 1;
+		channels = new int[c];
+		widths = new int[c];
+		values = new double[c * MAX_COLUMNS];
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	boolean isFull() {
+		return tail.get() - head.get() >= capacity;
+	}
+
+	/** Producer: appends a row, or returns false if the ring is full. */
+	boolean offer(int channel, double[] row, int width) {
+		long t = tail.get();
+		if (t - head.get() >= capacity)
+			return false;
+		write(t, channel, row, width);
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Producer: appends a row, discarding the oldest unread row if the ring
+	 * is full. Returns true if a row was discarded.
+	 */
+	boolean overwrite(int channel, double[] row, int width) {
+		long t = tail.get();
+		boolean dropped = false;
+		long h = head.get();
+		while (t - h >= capacity) {
+			if (head.compareAndSet(h, h + 1)) {
+				dropped = true;
+				break;
+			}
+			h = head.get();
+		}
+		write(t, channel, row, width);
+		tail.lazySet(t + 1);
+		return dropped;
+	}
+
+	private void write(long seq, int channel, double[] row, int width) {
+		int slot = (int) (seq & mask);
+		channels[slot] = channel;
+		widths[slot] = width;
+		System.arraycopy(row, 0, values, slot * MAX_COLUMNS, width);
+	}
+
+	/**
+	 * Consumer: copies the oldest row into {@code into} and returns its width,
+	 * or -1 if the ring is empty. The row's channel id is available from
+	 * {@link #polledChannel()}.
+	 */
+	int poll(double[] into) {
+		while (true) {
+			long h = head.get();
+			if (h == tail.get())
+				return -1;
+			int slot = (int) (h & mask);
+			int channel = channels[slot];
+			int width = widths[slot];
+			System.arraycopy(values, slot * MAX_COLUMNS, into, 0, width);
+			// fails only if the producer dropped this row while we were copying it
+			if (head.compareAndSet(h, h + 1)) {
+				polledChannel = channel;
+				return width;
+			}
+		}
+	}
+
+	int polledChannel() {
+		return polledChannel;
+	}
+}
@@ -0,0 +1,131 @@
+package Models.java;
+
+/**
+ * Decides which trace rows of a node are written. Policies are given as
+ * short strings, per node, for example from EFACTIVITY1:
+ *
+ * <pre>
+ * all            every row (the default)
+ * every:10       the first row and then every 10th row
+ * dt:0.5         at most one row per 0.5 units of simulation time
+ * change:0.01    only rows where some metric moved by more than 0.01
+ * </pre>
+ *
+ * Column 0 is the simulation time. A sampler remembers the last row it
+ * rejected so the channel can write it when the run ends, which keeps the
+ * end point of every curve.
+ */
+public abstract class TraceSampler {
+
+	public static final String ALL = "all";
+
+	/** Returns a new sampler for the policy, or null for "all". */
+	public static TraceSampler parse(String policy) {
+		if (policy == null)
+			return null;
+		String p = policy.trim();
+		if (p.isEmpty() || p.equals(ALL))
+			return null;
+		int colon = p.indexOf(':');
+		if (colon < 0)
+			throw new IllegalArgumentException("Bad trace sampling policy: " + policy);
+		String kind = p.substring(0, colon);
+		String arg = p.substring(colon + 1);
+		if (kind.equals("every"))
+			return new EveryNth(Integer.parseInt(arg));
+		if (kind.equals("dt"))
+			return new SimTimeDelta(Double.parseDouble(arg));
+		if (kind.equals("change"))
+			return new OnChange(Double.parseDouble(arg));
+		throw new IllegalArgumentException("Bad trace sampling policy: " + policy);
+	}
+
+	private double[] held;
+	private int heldWidth;
+
+	/** Returns true if the row should be written. */
+	final boolean sample(double[] row, int width) {
+		if (accept(row, width)) {
+			heldWidth = 0;
+			return true;
+		}
+		if (held == null || held.length < width)
+			held = new double[row.length];
+		System.arraycopy(row, 0, held, 0, width);
+		heldWidth = width;
+		return false;
+	}
+
+	/** The last rejected row if no row was accepted after it, else null. */
+	final double[] held() {
+		return heldWidth > 0 ? held : null;
+	}
+
+	final int heldWidth() {
+		return heldWidth;
+	}
+
+	final void clearHeld() {
+		heldWidth = 0;
+	}
+
+	protected abstract boolean accept(double[] row, int width);
+
+	static class EveryNth extends TraceSampler {
+		private final int n;
+		private long count;
+
+		EveryNth(int n) {
+			if (n < 1)
+				throw new IllegalArgumentException("every:N needs N >= 1");
+			this.n = n;
+		}
+
+		@Override
+		protected boolean accept(double[] row, int width) {
+			return count++ % n == 0;
+		}
+	}
+
+	static class SimTimeDelta extends TraceSampler {
+		private final double dt;
+		private double next = Double.NEGATIVE_INFINITY;
+
+		SimTimeDelta(double dt) {
+			this.dt = dt;
+		}
+
+		@Override
+		protected boolean accept(double[] row, int width) {
+			if (row[0] < next)
+				return false;
+			next = row[0] + dt;
+			return true;
+		}
+	}
+
+	static class OnChange extends TraceSampler {
+		private final double epsilon;
+		private final double[] last = new double[TraceRing.MAX_COLUMNS];
+		private int lastWidth = -1;
+
+		OnChange(double epsilon) {
+			this.epsilon = epsilon;
+		}
+
+		@Override
+		protected boolean accept(double[] row, int width) {
+			boolean changed = width != lastWidth;
+			for (int i = 1; i < width && !changed; i++) {
+				double a = row[i], b = last[i];
+				// a change between missing and present counts too
+				changed = (a != a) != (b != b) || Math.abs(a - b) > epsilon;
+			}
+			if (changed) {
+				System.arraycopy(row, 0, last, 0, width);
+				lastWidth = width;
+			}
+			return changed;
+		}
+	}
+}
@@ -2,16 +2,12 @@ package Models.java;
 
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
 
 import com.ms4systems.devs.analytics.PMFForSurvival;
@@ -43,18 +39,24 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 	//ENDID
 
 	// End state variables
+	// Phases, numbered in the order of PHASES
+	private static final int PASSIVE = 0;
+	private static final int EXPECTING = 1;
+	static final Phases PHASES = new Phases("passive", "expecting");
+
 	String phase = "passive";
+	int phaseId = PASSIVE;
 	Double sigma = 1.0;
 	protected String job;
 	protected Queue<Double> time_queue;
 	protected Map<String,Double> map;
 	protected int generated_job_counter, processed_job_counter;
 	protected double arrival_rate, throughput, average_turnaround_time, total_turnaround_time;
+	protected MetricsRegistry.NodeMetrics metrics;
+	protected LogHistogram turnaroundTimes;
 	protected boolean arbitrary, exactMatch, FIFOMerge;
-	FileWriter analyticsFile;
-	public String folder = System.getProperty("user.dir") + File.separator;
-	public String foldertxt = folder + "src\\Models\\csv\\"+ File.separator;
-	public String resultsFileName = foldertxt+"ACTIVITY1.csv";
+	TraceChannel trace;
+	public String resultsFileName;
 
 	// Input ports
 	public final Port<Serializable> inGeneratedJobs = 
@@ -68,6 +70,7 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 
 	// End output ports
 	protected SimulationOptionsImpl options = new SimulationOptionsImpl();
+	protected RunContext runContext = RunContext.getDefault();
 	protected double currentTime;
 
 	public Transducer() {
@@ -78,6 +81,10 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 		super(name);
 	}
 
+	public void setRunContext(RunContext runContext) {
+		this.runContext = runContext;
+	}
+
 	public void initialize() {
 		super.initialize();
 		time_queue = new LinkedList<>();
@@ -86,14 +93,17 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 		generated_job_counter = processed_job_counter =0;
 		arbitrary = exactMatch = FIFOMerge = false;
 		arbitrary = true;
-		try {
-			Files.createDirectories(Paths.get(foldertxt+""));
-			analyticsFile = new FileWriter(resultsFileName);
-			analyticsFile.write("Simulation time, Job produced counter, Turnaround time, Arrival time, Job arrival rate, Throughput, Queue size, Average turnaround time\n");
-			analyticsFile.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		metrics = runContext.getMetrics().register(getClass().getSimpleName());
+		metrics.counter("generated_job_counter", () -> generated_job_counter);
+		metrics.counter("processed_job_counter", () -> processed_job_counter);
+		metrics.gauge("arrival_rate", () -> arrival_rate);
+		metrics.gauge("throughput", () -> throughput);
+		metrics.gauge("average_turnaround_time", () -> average_turnaround_time);
+		turnaroundTimes = metrics.histogram("turnaround_time");
+		resultsFileName = runContext.resultsFile("ACTIVITY1.csv");
+		trace = runContext.getTraces().open(resultsFileName,
+				"Simulation time, Job produced counter, Turnaround time, Arrival time, Job arrival rate, Throughput, Queue size, Average turnaround time",
+				"diddddid", "NA");
 	}
 
 	@Override
@@ -101,60 +111,68 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 		currentTime += e;
 		sigma -= e;
 
-		for (int i=0; i< x.size();i++){
-			for(Port in_port: this.getInputPorts())
-				if (x.hasMessages(in_port)){
-					ArrayList<Message<Serializable>> messageList = in_port.getMessages(x);
-					for (int k = 0; k < messageList.size(); k++) {
-						job = (String) messageList.get(k).getData();
-						if(in_port.getName().equals("inGeneratedJobs")) {
-							holdIn("expecting", Double.POSITIVE_INFINITY);
-							time_queue.add(currentTime);
-							map.put(job, currentTime);
-							generated_job_counter++;
-							if(currentTime>0)
-								arrival_rate = generated_job_counter/currentTime;
-						}
-						else if(in_port.getName().equals("inProcessedJobs")) {
-							processed_job_counter++;
-							if(currentTime>0)
-								throughput = processed_job_counter/currentTime;
-							if(arbitrary && time_queue.size()>0){
-								double arrival_time = time_queue.remove();
-								double turnaround_time = currentTime-arrival_time;
+		// one pass over the bag, port by port
+		for(Port in_port: this.getInputPorts())
+			if (x.hasMessages(in_port)){
+				ArrayList<Message<Serializable>> messageList = in_port.getMessages(x);
+				for (int k = 0; k < messageList.size(); k++) {
+					job = (String) messageList.get(k).getData();
+					if(in_port.getName().equals("inGeneratedJobs")) {
+						holdIn(EXPECTING, Double.POSITIVE_INFINITY);
+						time_queue.add(currentTime);
+						map.put(job, currentTime);
+						generated_job_counter++;
+						if(currentTime>0)
+							arrival_rate = generated_job_counter/currentTime;
+					}
+					else if(in_port.getName().equals("inProcessedJobs")) {
+						processed_job_counter++;
+						if(currentTime>0)
+							throughput = processed_job_counter/currentTime;
+						if(arbitrary && time_queue.size()>0){
+							double arrival_time = time_queue.remove();
+							double turnaround_time = currentTime-arrival_time;
+							total_turnaround_time += turnaround_time;
+							turnaroundTimes.record(turnaround_time);
+							average_turnaround_time = total_turnaround_time/processed_job_counter;
+							trace.row(currentTime).col(processed_job_counter).col(turnaround_time).col(arrival_time)
+									.col(arrival_rate).col(throughput).col(time_queue.size()).col(average_turnaround_time).end();
+						} else if (exactMatch && map.size()>0) {
+							double arrival_time, turnaround_time;
+							if(map.containsKey(job)) {
+								arrival_time = map.get(job);
+								turnaround_time = currentTime-arrival_time;
 								total_turnaround_time += turnaround_time;
+								turnaroundTimes.record(turnaround_time);
 								average_turnaround_time = total_turnaround_time/processed_job_counter;
-								appendStrToFile(resultsFileName, ""+currentTime+","+processed_job_counter+","+turnaround_time+","+arrival_time+","+arrival_rate+","+throughput+","+time_queue.size()+","+average_turnaround_time+"\n");
-							} else if (exactMatch && map.size()>0) {
-								double arrival_time, turnaround_time;
-								if(map.containsKey(job)) {
-									arrival_time = map.get(job);
-									turnaround_time = currentTime-arrival_time;
-									total_turnaround_time += turnaround_time;
-									average_turnaround_time = total_turnaround_time/processed_job_counter;
-									appendStrToFile(resultsFileName, ""+currentTime+","+processed_job_counter+","+turnaround_time+","+arrival_time+","+arrival_rate+","+throughput+","+map.size()+","+average_turnaround_time+"\n");
-								} else {
-									arrival_time = currentTime;
-									turnaround_time = 0.0;
-									total_turnaround_time += turnaround_time;
-									average_turnaround_time = total_turnaround_time/processed_job_counter;
-									appendStrToFile(resultsFileName, ""+currentTime+","+processed_job_counter+","+turnaround_time+","+arrival_time+","+arrival_rate+","+throughput+","+map.size()+","+average_turnaround_time+"\n");
-								}
-							} else if (FIFOMerge && time_queue.size()>0) {
-								double arrival_time = time_queue.remove();
-								double turnaround_time = currentTime-arrival_time;
+								trace.row(currentTime).col(processed_job_counter).col(turnaround_time).col(arrival_time)
+										.col(arrival_rate).col(throughput).col(map.size()).col(average_turnaround_time).end();
+							} else {
+								arrival_time = currentTime;
+								turnaround_time = 0.0;
 								total_turnaround_time += turnaround_time;
+								turnaroundTimes.record(turnaround_time);
 								average_turnaround_time = total_turnaround_time/processed_job_counter;
-								appendStrToFile(resultsFileName, ""+currentTime+","+processed_job_counter+","+turnaround_time+","+arrival_time+","+arrival_rate+","+throughput+","+time_queue.size()+","+average_turnaround_time+"\n");	
+								trace.row(currentTime).col(processed_job_counter).col(turnaround_time).col(arrival_time)
+										.col(arrival_rate).col(throughput).col(map.size()).col(average_turnaround_time).end();
 							}
-							else
-								appendStrToFile(resultsFileName, ""+currentTime+","+processed_job_counter+","+"NA"+","+"NA"+","+arrival_rate+","+throughput+","+0+","+average_turnaround_time+"\n");
+						} else if (FIFOMerge && time_queue.size()>0) {
+							double arrival_time = time_queue.remove();
+							double turnaround_time = currentTime-arrival_time;
+							total_turnaround_time += turnaround_time;
+							turnaroundTimes.record(turnaround_time);
+							average_turnaround_time = total_turnaround_time/processed_job_counter;
+							trace.row(currentTime).col(processed_job_counter).col(turnaround_time).col(arrival_time)
+									.col(arrival_rate).col(throughput).col(time_queue.size()).col(average_turnaround_time).end();	
 						}
+						else
+							trace.row(currentTime).col(processed_job_counter).missing().missing()
+									.col(arrival_rate).col(throughput).col(0).col(average_turnaround_time).end();
 					}
 				}
-		}
+			}
 		if((arbitrary && time_queue.size()==0) || (exactMatch && map.size()==0) || (FIFOMerge && time_queue.size()==0))
-			holdIn("passive",Double.POSITIVE_INFINITY);
+			holdIn(PASSIVE, Double.POSITIVE_INFINITY);
 	}
 
 	@Override
@@ -163,10 +181,10 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 		currentTime += sigma;
 
 		if((arbitrary && time_queue.size()>0) || (exactMatch && map.size()>0) || (FIFOMerge && time_queue.size()>0)) {
-			holdIn("expecting",Double.POSITIVE_INFINITY);
+			holdIn(EXPECTING, Double.POSITIVE_INFINITY);
 		}
 		else {
-			holdIn("passive",Double.POSITIVE_INFINITY);
+			holdIn(PASSIVE, Double.POSITIVE_INFINITY);
 		}
 	}
 
@@ -183,10 +201,14 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 	}
 
 	protected void holdIn(String phase, Double sigma) {
-		this.phase = phase;
+		holdIn(PHASES.id(phase), sigma);
+	}
+
+	protected void holdIn(int phase, Double sigma) {
+		this.phaseId = phase;
+		this.phase = PHASES.name(phase);
 		this.sigma = sigma;
-		getSimulator().modelMessage(
-				"Holding in phase " + phase + " for time " + sigma);
+		ModelLog.holding(getSimulator(), this.phase, sigma);
 	}
 
 	@Override
@@ -206,16 +228,11 @@ public class Transducer extends AtomicModelImpl implements PhaseBased {
 		return this.phase.equals(arg0);
 	}
 
+	public boolean phaseIs(int phase) {
+		return phaseId == phase;
+	}
+
 	public void appendStrToFile(String fileName, String str) {
-		try {
-			// Open given file in append mode
-			BufferedWriter out = new BufferedWriter(
-					new FileWriter(fileName, true));
-			out.write(str);
-			out.close();
-		}
-		catch (IOException e) {
-			System.out.println(e);
-		}
+		AnalyticsSink.shared().append(fileName, str);
 	}
 }
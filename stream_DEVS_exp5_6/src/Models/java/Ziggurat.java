@@ -0,0 +1,109 @@
+package Models.java;
+
+import java.util.SplittableRandom;
+
+/**
+ * Marsaglia and Tsang's ziggurat method for standard normal and unit
+ * exponential variates ("The Ziggurat Method for Generating Random
+ * Variables", 2000), with 128 and 256 layers. Most draws cost one 64 bit
+ * random number, a table lookup and a multiply; only the few that land
+ * outside the layer's rectangle need exp or log.
+ *
+ * The layer index and the value come from different bits of the random
+ * number, which avoids the correlation of the original 32 bit version.
+ */
+final class Ziggurat {
+
+	private static final double R_NORMAL = 3.442619855899;
+	private static final double V_NORMAL = 9.91256303526217e-3;
+	private static final double R_EXP = 7.697117470131487;
+	private static final double V_EXP = 3.949659822581572e-3;
+	private static final double M1 = 2147483648.0;
+	private static final double M2 = 4294967296.0;
+
+	private static final long[] kn = new long[128];
+	private static final double[] wn = new double[128];
+	private static final double[] fn = new double[128];
+	private static final long[] ke = new long[256];
+	private static final double[] we = new double[256];
+	private static final double[] fe = new double[256];
+
+	static {
+		double dn = R_NORMAL, tn = dn;
+		double q = V_NORMAL / Math.exp(-.5 * dn * dn);
+		kn[0] = (long) ((dn / q) * M1);
+		kn[1] = 0;
+		wn[0] = q / M1;
+		wn[127] = dn / M1;
+		fn[0] = 1.0;
+		fn[127] = Math.exp(-.5 * dn * dn);
+		for (int i = 126; i >= 1; i--) {
+			dn = Math.sqrt(-2 * Math.log(V_NORMAL / dn + Math.exp(-.5 * dn * dn)));
+			kn[i + 1] = (long) ((dn / tn) * M1);
+			tn = dn;
+			fn[i] = Math.exp(-.5 * dn * dn);
+			wn[i] = dn / M1;
+		}
+
+		double de = R_EXP, te = de;
+		q = V_EXP / Math.exp(-de);
+		ke[0] = (long) ((de / q) * M2);
+		ke[1] = 0;
+		we[0] = q / M2;
+		we[255] = de / M2;
+		fe[0] = 1.0;
+		fe[255] = Math.exp(-de);
+		for (int i = 254; i >= 1; i--) {
+			de = -Math.log(V_EXP / de + Math.exp(-de));
+			ke[i + 1] = (long) ((de / te) * M2);
+			te = de;
+			fe[i] = Math.exp(-de);
+			we[i] = de / M2;
+		}
+	}
+
+	private Ziggurat() {
+	}
+
+	static double normal(SplittableRandom rand) {
+		for (;;) {
+			long bits = rand.nextLong();
+			int iz = (int) (bits & 127);
+			long hz = bits >> 32; // signed 32 bit value
+			if (Math.abs(hz) < kn[iz])
+				return hz * wn[iz];
+			if (iz == 0) {
+				// the tail beyond R_NORMAL
+				double x, y;
+				do {
+					x = -Math.log(uniform(rand)) / R_NORMAL;
+					y = -Math.log(uniform(rand));
+				} while (y + y < x * x);
+				return hz > 0 ? R_NORMAL + x : -R_NORMAL - x;
+			}
+			double x = hz * wn[iz];
+			if (fn[iz] + uniform(rand) * (fn[iz - 1] - fn[iz]) < Math.exp(-.5 * x * x))
+				return x;
+		}
+	}
+
+	static double exponential(SplittableRandom rand) {
+		for (;;) {
+			long bits = rand.nextLong();
+			int iz = (int) (bits & 255);
+			long jz = bits >>> 32; // unsigned 32 bit value
+			if (jz < ke[iz])
+				return jz * we[iz];
+			if (iz == 0)
+				return R_EXP - Math.log(uniform(rand));
+			double x = jz * we[iz];
+			if (fe[iz] + uniform(rand) * (fe[iz - 1] - fe[iz]) < Math.exp(-x))
+				return x;
+		}
+	}
+
+	// in (0, 1), safe for log
+	private static double uniform(SplittableRandom rand) {
+		return ((rand.nextLong() >>> 11) + 0.5) * 0x1.0p-53;
+	}
+}
@@ -0,0 +1,13 @@
+package com.ms4systems.devs.core.message;
+
+import java.io.Serializable;
+
+/** Fake of the MS4Me message bag, for the tests only. */
+public interface MessageBag {
+
+	<T extends Serializable> void add(Port<T> port, T data);
+
+	boolean hasMessages(Port<?> port);
+
+	int size();
+}
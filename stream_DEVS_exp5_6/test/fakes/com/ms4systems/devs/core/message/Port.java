@@ -0,0 +1,12 @@
+package com.ms4systems.devs.core.message;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/** Fake of the MS4Me port, for the tests only. */
+public interface Port<T extends Serializable> {
+
+	String getName();
+
+	ArrayList<Message<T>> getMessages(MessageBag bag);
+}
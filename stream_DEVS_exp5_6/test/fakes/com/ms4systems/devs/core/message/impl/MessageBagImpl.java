@@ -0,0 +1,53 @@
+package com.ms4systems.devs.core.message.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ms4systems.devs.core.message.Message;
+import com.ms4systems.devs.core.message.MessageBag;
+import com.ms4systems.devs.core.message.Port;
+
+/** Fake of the MS4Me message bag: the messages of every port in the order they were added. */
+public class MessageBagImpl implements MessageBag {
+
+	private final Map<Port<?>, ArrayList<Message<?>>> messages = new LinkedHashMap<Port<?>, ArrayList<Message<?>>>();
+
+	@Override
+	public <T extends Serializable> void add(Port<T> port, final T data) {
+		ArrayList<Message<?>> list = messages.get(port);
+		if (list == null)
+			messages.put(port, list = new ArrayList<Message<?>>());
+		list.add(new Message<T>() {
+			@Override
+			public T getData() {
+				return data;
+			}
+		});
+	}
+
+	@Override
+	public boolean hasMessages(Port<?> port) {
+		return messages.containsKey(port);
+	}
+
+	@Override
+	public int size() {
+		int n = 0;
+		for (ArrayList<Message<?>> list : messages.values())
+			n += list.size();
+		return n;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	<T extends Serializable> ArrayList<Message<T>> messagesOf(Port<T> port) {
+		ArrayList list = messages.get(port);
+		return list == null ? new ArrayList<Message<T>>() : new ArrayList<Message<T>>(list);
+	}
+
+	/** The messages of a port of a fake model, for {@link Port#getMessages(MessageBag)}. */
+	public static <T extends Serializable> ArrayList<Message<T>> of(MessageBag bag, Port<T> port) {
+		return ((MessageBagImpl) bag).messagesOf(port);
+	}
+}
@@ -0,0 +1,97 @@
+package com.ms4systems.devs.core.model.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.ms4systems.devs.core.message.Message;
+import com.ms4systems.devs.core.message.MessageBag;
+import com.ms4systems.devs.core.message.Port;
+import com.ms4systems.devs.core.message.impl.MessageBagImpl;
+import com.ms4systems.devs.core.simulation.Simulator;
+
+/**
+ * Fake of the MS4Me atomic model, for the tests only: named ports and the
+ * DEVS functions, without a simulator.
+ */
+public abstract class AtomicModelImpl implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String name;
+	private final List<Port<? extends Serializable>> inputs = new ArrayList<Port<? extends Serializable>>();
+	private final List<Port<? extends Serializable>> outputs = new ArrayList<Port<? extends Serializable>>();
+
+	public AtomicModelImpl(String name) {
+		this.name = name;
+	}
+
+	public AtomicModelImpl(String name, Simulator simulator) {
+		this(name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Simulator getSimulator() {
+		return null;
+	}
+
+	public void initialize() {
+	}
+
+	public <T extends Serializable> Port<T> addInputPort(String name, Class<T> type) {
+		Port<T> port = port(name);
+		inputs.add(port);
+		return port;
+	}
+
+	public Port<Serializable> addInputPort(String name) {
+		return addInputPort(name, Serializable.class);
+	}
+
+	public <T extends Serializable> Port<T> addOutputPort(String name, Class<T> type) {
+		Port<T> port = port(name);
+		outputs.add(port);
+		return port;
+	}
+
+	public Port<Serializable> addOutputPort(String name) {
+		return addOutputPort(name, Serializable.class);
+	}
+
+	public List<Port<? extends Serializable>> getInputPorts() {
+		return inputs;
+	}
+
+	public List<Port<? extends Serializable>> getOutputPorts() {
+		return outputs;
+	}
+
+	public abstract void internalTransition();
+
+	public abstract void externalTransition(double e, MessageBag x);
+
+	public abstract void confluentTransition(MessageBag x);
+
+	public abstract Double getTimeAdvance();
+
+	public MessageBag getOutput() {
+		return new MessageBagImpl();
+	}
+
+	private static <T extends Serializable> Port<T> port(final String name) {
+		return new Port<T>() {
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public ArrayList<Message<T>> getMessages(MessageBag bag) {
+				return MessageBagImpl.of(bag, this);
+			}
+		};
+	}
+}
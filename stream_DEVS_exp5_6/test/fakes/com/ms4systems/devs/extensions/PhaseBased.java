@@ -0,0 +1,11 @@
+package com.ms4systems.devs.extensions;
+
+/** Fake of the MS4Me phase extension, for the tests only. */
+public interface PhaseBased {
+
+	String getPhase();
+
+	String[] getPhaseNames();
+
+	boolean phaseIs(String phase);
+}
@@ -0,0 +1,96 @@
+package Models.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.ms4systems.devs.core.message.MessageBag;
+import com.ms4systems.devs.core.message.Port;
+import com.ms4systems.devs.core.message.impl.MessageBagImpl;
+import com.ms4systems.devs.core.model.impl.AtomicModelImpl;
+
+/**
+ * The job a join is combining is fixed when it enters COMBINING. Arrivals
+ * until the output, even ones that evict the combined job from a bounded
+ * lane, must not change what is sent or which entries the internal
+ * transition takes off the lanes. A model initialized again starts over
+ * with empty lanes.
+ */
+public class CombiningTest {
+
+	public static void main(String[] args) throws IOException {
+		File dir = Files.createTempDirectory("combining-test").toFile();
+		RunContext context = new RunContext(dir, 1);
+		ModelLog.setEnabled(false);
+		context.setJoinBounds("*", JoinIndex.Bounds.UNBOUNDED.capacity(2));
+
+		BEHAVIOR1 behavior = new BEHAVIOR1("BEHAVIOR1", 1.0, Arrays.asList("inFLOW11"),
+				Arrays.asList("outFLOW12", "outFLOW13"));
+		behavior.setRunContext(context);
+		combineWhileEvicting("BEHAVIOR1", behavior);
+		restart("BEHAVIOR1", behavior);
+
+		sync sync = new sync("sync", 1.0, Arrays.asList("inFLOW6", "inFLOW7", "inFLOW15", "inFLOW17"),
+				Arrays.asList("outFLOW8", "outFLOW18"));
+		sync.setRunContext(context);
+		combineWhileEvicting("sync", sync);
+		restart("sync", sync);
+
+		context.close();
+		BagsTest.delete(dir);
+	}
+
+	// "a" on every port starts COMBINING; "b" and "c" on the first port then push "a" out of its lane
+	static void combineWhileEvicting(String name, AtomicModelImpl model) {
+		model.initialize();
+		JoinIndex queues = BagsTest.queues(model);
+		List<Port> ins = new ArrayList<Port>(model.getInputPorts());
+		MessageBag bag = new MessageBagImpl();
+		for (Port port : ins)
+			bag.add(port, "a");
+		model.externalTransition(1.0, bag);
+		Check.equal("COMBINING", phase(model), name + ": phase after a");
+		for (String job : new String[] { "b", "c" }) {
+			bag = new MessageBagImpl();
+			bag.add(ins.get(0), job);
+			model.externalTransition(0.25, bag);
+			Check.equal("COMBINING", phase(model), name + ": phase after " + job);
+		}
+		Check.equal(1L, queues.getEvicted(), name + ": evicted");
+
+		if (model instanceof BEHAVIOR1) {
+			// sync sends its average queue size, BEHAVIOR1 the job
+			String a = "";
+			for (Port port : model.getOutputPorts())
+				a += port.getName() + "=a ";
+			Check.equal(a, BagsTest.outputs(model), name + ": output");
+		}
+		model.internalTransition();
+		Check.equal(2, queues.size(0), name + ": jobs left on the first lane");
+		Check.equal("b", queues.peekJob(0), name + ": head of the first lane");
+		for (int port = 1; port < queues.ports(); port++)
+			Check.equal(0, queues.size(port), name + ": jobs left on lane " + port);
+	}
+
+	// a model initialized again starts a new run: no jobs, no drops, no occupancy
+	static void restart(String name, AtomicModelImpl model) {
+		model.initialize();
+		JoinIndex queues = BagsTest.queues(model);
+		Check.equal(0, queues.size(), name + ": jobs after initialize()");
+		Check.equal(0L, queues.getEvicted(), name + ": evicted after initialize()");
+		Check.equal(0.0, queues.getTimeAverageSize(1.0), name + ": time average after initialize()");
+		MessageBag bag = new MessageBagImpl();
+		Port port = model.getInputPorts().iterator().next();
+		bag.add(port, "a");
+		model.externalTransition(2.0, bag);
+		Check.equal(1, queues.size(0), name + ": jobs on the first lane");
+		Check.equal(2.0, queues.peek(0), name + ": arrival time in the new run");
+	}
+
+	static String phase(AtomicModelImpl model) {
+		return ((com.ms4systems.devs.extensions.PhaseBased) model).getPhase().toUpperCase();
+	}
+}
@@ -0,0 +1,227 @@
+package Models.java;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * JoinIndex against the queues it replaced: a linked list of arrivals per
+ * lane, searched by scanning. Random adds, joins, polls, expiries and held
+ * jobs, with and without bounds, must leave both with the same jobs, give
+ * the same arrival times and count the same dropped jobs.
+ */
+public class JoinIndexTest {
+
+	public static void main(String[] args) {
+		for (int seed = 0; seed < 400; seed++)
+			compareWithLists(seed);
+		timeAverage();
+	}
+
+	static void compareWithLists(int seed) {
+		Random random = new Random(seed);
+		int ports = 1 + random.nextInt(4);
+		JoinIndex index = new JoinIndex(ports);
+		Lists lists = new Lists(ports);
+		if (random.nextBoolean()) {
+			lists.capacity = 1 + random.nextInt(40);
+			lists.rejectNew = random.nextBoolean();
+			JoinIndex.Bounds bounds = JoinIndex.Bounds.UNBOUNDED.capacity(lists.capacity)
+					.eviction(lists.rejectNew ? JoinIndex.Eviction.REJECT_NEW : JoinIndex.Eviction.OLDEST_FIRST);
+			if (random.nextBoolean()) {
+				lists.timeToLive = 5 + random.nextInt(300);
+				bounds = bounds.timeToLive(lists.timeToLive);
+			}
+			index.setBounds(bounds, Collections.<String, Integer>emptyMap());
+		}
+		String context = "seed " + seed;
+		for (int k = 0; k < 4000; k++) {
+			double now = k;
+			int port = random.nextInt(ports);
+			int op = random.nextInt(20);
+			if (op < 11) {
+				String job = String.valueOf(random.nextInt(25));
+				index.add(port, job, now);
+				lists.add(port, job, now);
+			} else if (op < 14) {
+				String match = lists.match();
+				Check.equal(match, index.match(), context + ": match at " + k);
+				if (match != null)
+					for (int p = 0; p < ports; p++)
+						Check.equal(lists.take(p, match), index.take(p, match), context + ": take at " + k);
+			} else if (op < 15) {
+				Check.equal(lists.poll(port), index.poll(port), context + ": poll at " + k);
+			} else if (op < 16) {
+				index.expire(now);
+				lists.expire(now);
+			} else if (op < 17) {
+				index.holdHeads();
+				lists.holdHeads();
+			} else if (op < 18) {
+				String match = lists.match();
+				if (match != null) {
+					index.hold(match);
+					lists.hold(match);
+				}
+			} else if (op < 19) {
+				for (int p = 0; p < ports; p++)
+					Check.equal(lists.takeHeld(p), index.takeHeld(p), context + ": takeHeld at " + k);
+			} else
+				Check.equal(lists.lane(port).isEmpty() ? null : lists.lane(port).getFirst().job, index.peekJob(port),
+						context + ": peekJob at " + k);
+			Check.equal(lists.toString(), index.toString(), context + ": lanes after " + k);
+			Check.equal(lists.size(), index.size(), context + ": size after " + k);
+			Check.equal(lists.evicted + " " + lists.rejected + " " + lists.expired,
+					index.getEvicted() + " " + index.getRejected() + " " + index.getExpired(),
+					context + ": evicted, rejected, expired after " + k);
+		}
+	}
+
+	// one job on [0, 2), three on [2, 5), none after: a mean of 11/10 up to 10
+	static void timeAverage() {
+		JoinIndex index = new JoinIndex(2);
+		index.advance(0.0);
+		index.add(0, "a", 0.0);
+		index.advance(2.0);
+		index.add(0, "b", 2.0);
+		index.add(1, "c", 2.0);
+		index.advance(5.0);
+		index.poll(0);
+		index.poll(0);
+		index.poll(1);
+		Check.that(Math.abs(index.getTimeAverageSize(10.0) - 1.1) < 1e-12,
+				"time average " + index.getTimeAverageSize(10.0));
+		Check.that(Math.abs(index.getTimeAverageSize(5.0) - 2.2) < 1e-12,
+				"time average " + index.getTimeAverageSize(5.0));
+	}
+
+	static final class Arrival {
+		final String job;
+		final double time;
+
+		Arrival(String job, double time) {
+			this.job = job;
+			this.time = time;
+		}
+	}
+
+	/** The reference: every lane a list in arrival order, everything found by scanning. */
+	static final class Lists {
+		final List<LinkedList<Arrival>> lanes = new ArrayList<LinkedList<Arrival>>();
+		final Arrival[] held;
+		int capacity = Integer.MAX_VALUE;
+		boolean rejectNew;
+		double timeToLive = Double.POSITIVE_INFINITY;
+		long evicted, rejected, expired;
+
+		Lists(int ports) {
+			for (int p = 0; p < ports; p++)
+				lanes.add(new LinkedList<Arrival>());
+			held = new Arrival[ports];
+		}
+
+		LinkedList<Arrival> lane(int port) {
+			return lanes.get(port);
+		}
+
+		void add(int port, String job, double time) {
+			LinkedList<Arrival> lane = lane(port);
+			if (lane.size() >= capacity && rejectNew) {
+				rejected++;
+				return;
+			}
+			while (lane.size() >= capacity) {
+				poll(port);
+				evicted++;
+			}
+			lane.add(new Arrival(job, time));
+		}
+
+		String match() {
+			for (Arrival a : lane(0)) {
+				boolean everywhere = true;
+				for (LinkedList<Arrival> lane : lanes)
+					everywhere &= first(lane, a.job) != null;
+				if (everywhere)
+					return a.job;
+			}
+			return null;
+		}
+
+		double take(int port, String job) {
+			Arrival a = first(lane(port), job);
+			return a == null ? Double.NaN : remove(port, a);
+		}
+
+		double poll(int port) {
+			return lane(port).isEmpty() ? Double.NaN : remove(port, lane(port).getFirst());
+		}
+
+		void expire(double now) {
+			for (int port = 0; port < lanes.size(); port++)
+				while (!lane(port).isEmpty() && now - lane(port).getFirst().time > timeToLive) {
+					poll(port);
+					expired++;
+				}
+		}
+
+		void holdHeads() {
+			for (int port = 0; port < lanes.size(); port++)
+				held[port] = lane(port).peekFirst();
+		}
+
+		void hold(String job) {
+			for (int port = 0; port < lanes.size(); port++)
+				held[port] = first(lane(port), job);
+		}
+
+		double takeHeld(int port) {
+			Arrival a = held[port];
+			held[port] = null;
+			return a == null ? Double.NaN : remove(port, a);
+		}
+
+		int size() {
+			int size = 0;
+			for (LinkedList<Arrival> lane : lanes)
+				size += lane.size();
+			return size;
+		}
+
+		private double remove(int port, Arrival a) {
+			lane(port).remove(a);
+			if (held[port] == a)
+				held[port] = null;
+			return a.time;
+		}
+
+		private static Arrival first(LinkedList<Arrival> lane, String job) {
+			for (Arrival a : lane)
+				if (a.job.equals(job))
+					return a;
+			return null;
+		}
+
+		// the format of JoinIndex.toString()
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int port = 0; port < lanes.size(); port++) {
+				sb.append(port == 0 ? "[" : " [");
+				String separator = "";
+				for (Arrival a : lane(port)) {
+					sb.append(separator).append(a.job).append('@').append(a.time);
+					if (a == held[port])
+						sb.append('*');
+					separator = ", ";
+				}
+				sb.append(']');
+			}
+			return sb.toString();
+		}
+	}
+}
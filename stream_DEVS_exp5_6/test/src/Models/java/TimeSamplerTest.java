@@ -0,0 +1,174 @@
+package Models.java;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * The Markov nodes draw their transition times from the transition table,
+ * in place of ctm.timeToNextEvent. For every TimeInfo of every file in
+ * src/Models/xml, the times State.sampleTime gives must follow the
+ * distribution the TimeInfo describes: a Kolmogorov-Smirnov test of
+ * SAMPLES draws against the distribution function read from the XML here,
+ * independently of the table's parser. The same draws must fail the test
+ * against the distribution with every parameter 10% larger, so a sampler
+ * that is only roughly right does not pass.
+ */
+public class TimeSamplerTest {
+
+	static final int SAMPLES = 20000;
+	// critical value of the KS statistic at a level of about 0.001
+	static final double BOUND = 1.95 / Math.sqrt(SAMPLES);
+
+	public static void main(String[] args) throws Exception {
+		File[] files = new File("src/Models/xml").listFiles();
+		Arrays.sort(files);
+		int checked = 0;
+		for (File file : files) {
+			if (!file.getName().endsWith(".xml"))
+				continue;
+			TransitionTable table = TransitionTable.load(file.getPath());
+			NodeList infos = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file)
+					.getElementsByTagName("TransitionInfo");
+			Map<String, Integer> seen = new HashMap<String, Integer>();
+			for (int i = 0; i < infos.getLength(); i++) {
+				Element e = (Element) infos.item(i);
+				String from = text(e, "StartState"), to = text(e, "EndState");
+				// the table keeps a state's transitions in file order
+				Integer index = seen.get(from);
+				seen.put(from, index = index == null ? 0 : index + 1);
+				TransitionTable.State state = table.state(from);
+				String name = file.getName() + " " + from + " -> " + to;
+				Check.equal(to, state.getSuccName(index), name + ": successor");
+				check(name, state, index, (Element) e.getElementsByTagName("TimeInfo").item(0), i);
+				checked++;
+			}
+		}
+		Check.that(checked > 0, "no TimeInfo in src/Models/xml");
+	}
+
+	static void check(String name, TransitionTable.State state, int index, Element info, long seed) {
+		Check.that(info != null, name + ": no TimeInfo");
+		RandomStream rng = RandomStream.of(seed);
+		double[] x = new double[SAMPLES];
+		for (int i = 0; i < SAMPLES; i++)
+			x[i] = state.sampleTime(index, rng);
+		Arrays.sort(x);
+		String type = text(info, "Type");
+		if (type.equals("Uniform")) {
+			double lower = number(info, "Lower"), upper = number(info, "Upper");
+			if (upper <= lower) {
+				Check.that(x[0] == lower && x[SAMPLES - 1] == lower, name + ": fixed time " + lower);
+				return;
+			}
+			fits(name, x, new Uniform(lower, upper), new Uniform(lower * 1.1, upper * 1.1));
+		} else if (type.equals("Exponential"))
+			fits(name, x, new Exponential(number(info, "Mean")), new Exponential(number(info, "Mean") * 1.1));
+		else if (type.equals("Normal")) {
+			double mean = number(info, "Mean"), sigma = number(info, "Sigma");
+			fits(name, x, new Normal(mean, sigma), new Normal(mean * 1.1, sigma * 1.1));
+		} else
+			throw new AssertionError(name + ": unknown TimeInfo type " + type);
+	}
+
+	static void fits(String name, double[] sorted, Cdf cdf, Cdf wrong) {
+		double d = ks(sorted, cdf);
+		Check.that(d < BOUND, name + ": KS statistic " + d + " against " + cdf + ", bound " + BOUND);
+		d = ks(sorted, wrong);
+		Check.that(d >= BOUND, name + ": KS statistic " + d + " also fits " + wrong);
+	}
+
+	static double ks(double[] sorted, Cdf cdf) {
+		int n = sorted.length;
+		double d = 0;
+		for (int i = 0; i < n; i++) {
+			double f = cdf.at(sorted[i]);
+			d = Math.max(d, Math.max(f - (double) i / n, (double) (i + 1) / n - f));
+		}
+		return d;
+	}
+
+	interface Cdf {
+		double at(double x);
+	}
+
+	static final class Uniform implements Cdf {
+		final double lower, upper;
+
+		Uniform(double lower, double upper) {
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		public double at(double x) {
+			return x <= lower ? 0.0 : x >= upper ? 1.0 : (x - lower) / (upper - lower);
+		}
+
+		@Override
+		public String toString() {
+			return "Uniform(" + lower + ", " + upper + ")";
+		}
+	}
+
+	static final class Exponential implements Cdf {
+		final double mean;
+
+		Exponential(double mean) {
+			this.mean = mean;
+		}
+
+		public double at(double x) {
+			return x <= 0 ? 0.0 : 1.0 - Math.exp(-x / mean);
+		}
+
+		@Override
+		public String toString() {
+			return "Exponential(" + mean + ")";
+		}
+	}
+
+	// cut at 0: the negative draws are all 0
+	static final class Normal implements Cdf {
+		final double mean, sigma;
+
+		Normal(double mean, double sigma) {
+			this.mean = mean;
+			this.sigma = sigma;
+		}
+
+		public double at(double x) {
+			return x < 0 ? 0.0 : phi((x - mean) / sigma);
+		}
+
+		@Override
+		public String toString() {
+			return "Normal(" + mean + ", " + sigma + ") cut at 0";
+		}
+	}
+
+	// the standard normal distribution function, Abramowitz and Stegun 7.1.26 (error below 1e-7)
+	static double phi(double z) {
+		double x = Math.abs(z) / Math.sqrt(2.0);
+		double t = 1.0 / (1.0 + 0.3275911 * x);
+		double erf = 1.0 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+				+ t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+		return z >= 0 ? 0.5 * (1.0 + erf) : 0.5 * (1.0 - erf);
+	}
+
+	static String text(Element parent, String tag) {
+		NodeList nodes = parent.getElementsByTagName(tag);
+		return nodes.getLength() == 0 ? "" : nodes.item(0).getTextContent().trim();
+	}
+
+	static double number(Element info, String tag) {
+		String s = text(info, tag);
+		Check.that(!s.isEmpty(), "TimeInfo without " + tag);
+		return Double.parseDouble(s);
+	}
+}
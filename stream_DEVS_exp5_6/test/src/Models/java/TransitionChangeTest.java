@@ -0,0 +1,99 @@
+package Models.java;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import Models.java.TransitionTable.Change;
+import Models.java.TransitionTable.TimeSampler;
+
+/**
+ * A change to a running table is checked where it is applied or posted,
+ * against the changes already waiting for the state, so that advance() on
+ * the simulation thread never meets one that leaves a state without
+ * probability.
+ */
+public class TransitionChangeTest {
+
+	public static void main(String[] args) throws IOException {
+		File xml = File.createTempFile("change-test", ".xml");
+		FileWriter w = new FileWriter(xml);
+		w.write("<ProbDEVS>\n" + transition("a") + transition("b") + "</ProbDEVS>\n");
+		w.close();
+		TransitionTable table = TransitionTable.load(xml.getPath());
+		xml.delete();
+		TransitionTable.State active = table.state("active");
+
+		// a posted change counts for the next one
+		table.post(Change.probability("active", "a", 0.0));
+		rejected(table, Change.probability("active", "b", 0.0), true, "b = 0 after a posted a = 0");
+		table.advance(1.0);
+		probabilities(active, 0.0, 1.0, "after a = 0");
+
+		// the check runs on the posting thread, not in advance()
+		final RuntimeException[] thrown = new RuntimeException[1];
+		Thread poster = new Thread() {
+			@Override
+			public void run() {
+				try {
+					table.post(Change.probability("active", "b", 0.0));
+				} catch (IllegalArgumentException e) {
+					thrown[0] = e;
+				}
+			}
+		};
+		poster.start();
+		join(poster);
+		Check.that(thrown[0] != null, "b = 0 posted from another thread was not rejected there");
+		table.advance(2.0);
+		probabilities(active, 0.0, 1.0, "after the rejected post");
+
+		// a timed change is made after the posted ones, in time order
+		table.apply(Change.probability("active", "a", 1.0).at(10.0));
+		rejected(table, Change.probability("active", "b", 0.0), true, "b = 0 made before a = 1 at 10");
+		rejected(table, Change.probability("active", "b", 0.0), false, "b = 0 made now, before a = 1 at 10");
+		rejected(table, Change.probability("active", "b", 0.0).at(5.0), true, "b = 0 at 5, before a = 1 at 10");
+		table.post(Change.probability("active", "b", 0.0).at(20.0));
+		table.advance(15.0);
+		probabilities(active, 1.0, 1.0, "at 15");
+		table.advance(20.0);
+		probabilities(active, 1.0, 0.0, "at 20");
+
+		// a time change is made as well
+		table.post(Change.time("active", "a", TimeSampler.uniform(5.0, 5.0)));
+		table.advance(21.0);
+		Check.equal(5.0, active.sampleTime(0, RandomStream.of(1L)), "time to a after the time change");
+
+		rejected(table, Change.probability("active", "c", 1.0), true, "a transition the file does not have");
+	}
+
+	static String transition(String to) {
+		return "<TransitionInfo><StartState>active</StartState><EndState>" + to
+				+ "</EndState><ProbValue>1.0</ProbValue><TimeInfo><Type>Uniform</Type><Lower>0.0</Lower>"
+				+ "<Upper>1.0</Upper><Mean>1.0</Mean><Sigma>1.0</Sigma><Alpha>1.0</Alpha></TimeInfo></TransitionInfo>\n";
+	}
+
+	static void rejected(TransitionTable table, Change change, boolean post, String what) {
+		try {
+			if (post)
+				table.post(change);
+			else
+				table.apply(change);
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		throw new AssertionError((post ? "posted " : "applied ") + what + " was accepted");
+	}
+
+	static void probabilities(TransitionTable.State state, double a, double b, String when) {
+		Check.equal(a + " " + b, state.getProbability(0) + " " + state.getProbability(1), "probabilities " + when);
+	}
+
+	static void join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+	}
+}